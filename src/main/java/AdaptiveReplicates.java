@@ -0,0 +1,77 @@
+import java.util.ArrayList;
+import java.util.List;
+
+//grows replicates of each configuration of an experiment until the 95% confidence interval of the measure is
+//narrow enough, instead of a fixed number for every configuration. Replicates are grown in rounds on a
+//SweepScheduler, each round only for the configurations that have not settled yet, with as many more as their spread
+//so far says they need (at most as many again as they have, and never past the cap). Quiet configurations stop early
+//and the time goes to the noisy ones. Replicate r of every configuration is grown from seed + r, so the results do not
+//depend on the number of threads
+public class AdaptiveReplicates {
+	int minReplicates = 3; //grown for every configuration before its interval is looked at
+	int maxReplicates = 30; //cap for configurations that never settle
+	double tolerance = 0.05; //wanted half width of the interval as a fraction of the mean
+	long seed = 0;
+	int threads = Runtime.getRuntime().availableProcessors();
+	int grown; //replicates grown by the last run, over all configurations
+
+	//the measure of every configuration over its replicates, in the order of the configurations
+	Welford[] run(List<SimulationParams> configs, List<TreeParams> trees, SweepScheduler.Measure measure, SimulationView view) {
+		Welford[] results = new Welford[configs.size()];
+		for (int c = 0; c < results.length; c++) {
+			results[c] = new Welford();
+		}
+		grown = 0;
+		SweepScheduler scheduler = new SweepScheduler(threads);
+		while (true) {
+			ArrayList<SimulationParams> runs = new ArrayList<SimulationParams>();
+			ArrayList<TreeParams> runTrees = new ArrayList<TreeParams>();
+			ArrayList<Integer> runConfigs = new ArrayList<Integer>();
+			for (int c = 0; c < results.length; c++) {
+				int more = more(results[c]);
+				for (int r = (int)results[c].count; r < results[c].count + more; r++) {
+					SimulationParams params = configs.get(c).copy();
+					params.seed = seed + r;
+					runs.add(params);
+					runTrees.add(trees.get(c));
+					runConfigs.add(c);
+				}
+			}
+			if (runs.isEmpty()) {
+				return results;
+			}
+			float[] values = scheduler.run(runs, runTrees, measure, view);
+			for (int i = 0; i < values.length; i++) { //in the order of the replicates of each configuration
+				results[runConfigs.get(i)].add(values[i]);
+			}
+			grown += values.length;
+		}
+	}
+
+	//the same for general deciduous trees
+	Welford[] run(List<SimulationParams> configs, SweepScheduler.Measure measure, SimulationView view) {
+		List<TreeParams> trees = new ArrayList<TreeParams>(configs.size());
+		for (int i = 0; i < configs.size(); i++) {
+			trees.add(TreeParams.createGeneralDeciduousTreeParams());
+		}
+		return run(configs, trees, measure, view);
+	}
+
+	//true if the interval of a configuration is narrow enough
+	boolean settled(Welford result) {
+		return result.count >= minReplicates && result.halfWidth95() <= tolerance * Math.abs(result.mean);
+	}
+
+	//number of replicates to grow for a configuration in the next round, 0 if it is done
+	private int more(Welford result) {
+		if (result.count < minReplicates)
+			return minReplicates - (int)result.count;
+		if (settled(result) || result.count >= maxReplicates)
+			return 0;
+		//replicates needed for the interval to be narrow enough if the spread stays as it is
+		double wanted = tolerance * Math.abs(result.mean) / (Welford.t95(result.count - 1) * result.standardDeviation());
+		long needed = (long)Math.ceil(1 / (wanted * wanted));
+		long more = Math.min(Math.max(needed - result.count, 1), result.count);
+		return (int)Math.min(more, maxReplicates - result.count);
+	}
+}
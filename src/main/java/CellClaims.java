@@ -0,0 +1,67 @@
+import java.util.Arrays;
+
+//cells of the voxel grid that one tree wants to fill or empty in a year when trees grow at the same time.
+//While trees grow they only read the occupancy of the grid, the changes are made afterwards one tree at a time
+public class CellClaims {
+	int[] released = new int[64]; //cells of branches that were killed
+	int releasedCount = 0;
+	int[] claimed = new int[64]; //cells wanted by new segments, in the order the segments sprouted
+	int[] claimedBy = new int[64]; //the new segment that wants each cell
+	int claimedCount = 0;
+	private int[] table = new int[256]; //claimed cells + 1 by hash, 0 for an empty place
+
+	//records that the cells in cells[from, to) are to be emptied
+	void release(int[] cells, int from, int to) {
+		if (releasedCount + to - from > released.length)
+			released = Arrays.copyOf(released, Math.max(released.length * 2, releasedCount + to - from));
+		System.arraycopy(cells, from, released, releasedCount, to - from);
+		releasedCount += to - from;
+	}
+
+	//records that a new segment wants a cell
+	void claim(int cell, int segment) {
+		if (claimedCount == claimed.length) {
+			claimed = Arrays.copyOf(claimed, claimedCount * 2);
+			claimedBy = Arrays.copyOf(claimedBy, claimedCount * 2);
+		}
+		claimed[claimedCount] = cell;
+		claimedBy[claimedCount++] = segment;
+		if (claimedCount * 2 > table.length) {
+			table = new int[table.length * 2];
+			for (int i = 0; i < claimedCount; i++)
+				add(claimed[i]);
+		}
+		else
+			add(cell);
+	}
+
+	//true if a new segment of this tree already wants the cell
+	boolean claimed(int cell) {
+		int mask = table.length - 1;
+		for (int i = hash(cell) & mask; table[i] != 0; i = (i + 1) & mask) {
+			if (table[i] == cell + 1)
+				return true;
+		}
+		return false;
+	}
+
+	private void add(int cell) {
+		int mask = table.length - 1;
+		int i = hash(cell) & mask;
+		while (table[i] != 0)
+			i = (i + 1) & mask;
+		table[i] = cell + 1;
+	}
+
+	private static int hash(int cell) {
+		return cell * 0x9e3779b9 >>> 7;
+	}
+
+	//forgets everything, for the next year
+	void clear() {
+		if (claimedCount > 0)
+			Arrays.fill(table, 0);
+		releasedCount = 0;
+		claimedCount = 0;
+	}
+}
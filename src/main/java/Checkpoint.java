@@ -0,0 +1,228 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+
+//a file holding the state of a simulation between two years, so that it can be continued later or many times over
+//with different parameters instead of being grown again from the start. Values are written one after another in
+//little endian order through a buffer on a file channel, arrays in bulk. What each class writes is in its
+//writeCheckpoint method and read back in the same order
+public class Checkpoint {
+	static final int MAGIC = 0x5a434b50;
+	static final int VERSION = 1;
+	static final int BUFFER_BYTES = 1 << 16;
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+	private final boolean writing;
+
+	private Checkpoint(FileChannel channel, boolean writing) {
+		this.channel = channel;
+		this.writing = writing;
+		if (!writing)
+			buffer.limit(0);
+	}
+
+	//creates a new checkpoint file, replacing anything already there
+	static Checkpoint create(File file) throws IOException {
+		Checkpoint c = new Checkpoint(new FileOutputStream(file).getChannel(), true);
+		c.putInt(MAGIC);
+		c.putInt(VERSION);
+		return c;
+	}
+
+	//opens a checkpoint file to read it from the start
+	static Checkpoint open(File file) throws IOException {
+		Checkpoint c = new Checkpoint(new FileInputStream(file).getChannel(), false);
+		if (c.getInt() != MAGIC || c.getInt() != VERSION) {
+			c.close();
+			throw new IOException(file + " is not a checkpoint file");
+		}
+		return c;
+	}
+
+	//writes what is left in the buffer and closes the file
+	void close() throws IOException {
+		if (writing)
+			flush();
+		channel.close();
+	}
+
+	//writes the buffer to the file
+	private void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	//makes room for at least the given number of bytes when writing, or reads until they are there when reading
+	private void need(int bytes) throws IOException {
+		if (writing) {
+			if (buffer.remaining() < bytes)
+				flush();
+		}
+		else if (buffer.remaining() < bytes) {
+			buffer.compact();
+			while (buffer.position() < bytes) {
+				if (channel.read(buffer) < 0)
+					throw new IOException("checkpoint ends too soon");
+			}
+			buffer.flip();
+		}
+	}
+
+	void putInt(int value) throws IOException {
+		need(4);
+		buffer.putInt(value);
+	}
+
+	void putLong(long value) throws IOException {
+		need(8);
+		buffer.putLong(value);
+	}
+
+	void putFloat(float value) throws IOException {
+		need(4);
+		buffer.putFloat(value);
+	}
+
+	void putDouble(double value) throws IOException {
+		need(8);
+		buffer.putDouble(value);
+	}
+
+	int getInt() throws IOException {
+		need(4);
+		return buffer.getInt();
+	}
+
+	long getLong() throws IOException {
+		need(8);
+		return buffer.getLong();
+	}
+
+	float getFloat() throws IOException {
+		need(4);
+		return buffer.getFloat();
+	}
+
+	double getDouble() throws IOException {
+		need(8);
+		return buffer.getDouble();
+	}
+
+	//values[0, count)
+	void putInts(int[] values, int count) throws IOException {
+		for (int done = 0; done < count; ) {
+			need(4);
+			int n = Math.min(count - done, buffer.remaining() / 4);
+			buffer.asIntBuffer().put(values, done, n);
+			buffer.position(buffer.position() + 4 * n);
+			done += n;
+		}
+	}
+
+	//reads values[0, count)
+	void getInts(int[] values, int count) throws IOException {
+		for (int done = 0; done < count; ) {
+			need(Math.min(4 * (count - done), BUFFER_BYTES));
+			int n = Math.min(count - done, buffer.remaining() / 4);
+			buffer.asIntBuffer().get(values, done, n);
+			buffer.position(buffer.position() + 4 * n);
+			done += n;
+		}
+	}
+
+	//values[0, count)
+	void putFloats(float[] values, int count) throws IOException {
+		for (int done = 0; done < count; ) {
+			need(4);
+			int n = Math.min(count - done, buffer.remaining() / 4);
+			buffer.asFloatBuffer().put(values, done, n);
+			buffer.position(buffer.position() + 4 * n);
+			done += n;
+		}
+	}
+
+	//reads values[0, count)
+	void getFloats(float[] values, int count) throws IOException {
+		for (int done = 0; done < count; ) {
+			need(Math.min(4 * (count - done), BUFFER_BYTES));
+			int n = Math.min(count - done, buffer.remaining() / 4);
+			buffer.asFloatBuffer().get(values, done, n);
+			buffer.position(buffer.position() + 4 * n);
+			done += n;
+		}
+	}
+
+	//values[0, count), one byte each
+	void putBooleans(boolean[] values, int count) throws IOException {
+		for (int i = 0; i < count; i++) {
+			need(1);
+			buffer.put((byte)(values[i] ? 1 : 0));
+		}
+	}
+
+	//reads values[0, count)
+	void getBooleans(boolean[] values, int count) throws IOException {
+		for (int i = 0; i < count; i++) {
+			need(1);
+			values[i] = buffer.get() != 0;
+		}
+	}
+
+	//every value in the buffer
+	void putFloats(FloatBuffer values) throws IOException {
+		for (int done = 0; done < values.capacity(); ) {
+			need(4);
+			int n = Math.min(values.capacity() - done, buffer.remaining() / 4);
+			for (int i = 0; i < n; i++) {
+				buffer.putFloat(values.get(done + i));
+			}
+			done += n;
+		}
+	}
+
+	//reads every value of the buffer
+	void getFloats(FloatBuffer values) throws IOException {
+		for (int done = 0; done < values.capacity(); ) {
+			need(Math.min(4 * (values.capacity() - done), BUFFER_BYTES));
+			int n = Math.min(values.capacity() - done, buffer.remaining() / 4);
+			for (int i = 0; i < n; i++) {
+				values.put(done + i, buffer.getFloat());
+			}
+			done += n;
+		}
+	}
+
+	//every value in the buffer
+	void putLongs(LongBuffer values) throws IOException {
+		for (int done = 0; done < values.capacity(); ) {
+			need(8);
+			int n = Math.min(values.capacity() - done, buffer.remaining() / 8);
+			for (int i = 0; i < n; i++) {
+				buffer.putLong(values.get(done + i));
+			}
+			done += n;
+		}
+	}
+
+	//reads every value of the buffer
+	void getLongs(LongBuffer values) throws IOException {
+		for (int done = 0; done < values.capacity(); ) {
+			need(Math.min(8 * (values.capacity() - done), BUFFER_BYTES));
+			int n = Math.min(values.capacity() - done, buffer.remaining() / 8);
+			for (int i = 0; i < n; i++) {
+				values.put(done + i, buffer.getLong());
+			}
+			done += n;
+		}
+	}
+}
@@ -0,0 +1,94 @@
+import java.util.Arrays;
+
+//directional light worked out from the number of occupied cells each direction of light passes through
+//every occupied cell multiplies the light going through it by .2 and empty cells let it through, so the light a cell
+//gets from one direction only depends on how many occupied cells are above it on that path. DOWN light follows its
+//column, the other directions move one cell sideways per layer and wrap around the plot like the sweep in VoxelGrid
+public class ColumnLight {
+	final int DOWN = 0;
+	final int NORTH = 1;
+	final int SOUTH = 2;
+	final int EAST = 3;
+	final int WEST = 4;
+	static final int MAX_COUNT = 255; //counts are kept in a byte, so a path can have at most this many layers
+
+	int nx, ny, nz;
+	private byte[][][] counts; //for each direction and path, occupied cells on the path above each layer, null if there are none
+	private boolean[][] shared; //paths whose counts are shared with another ColumnLight, copied before they change. Null if none are
+	private float[][] passed; //for each direction, the light left after passing through k occupied cells
+
+	ColumnLight(int nx, int ny, int nz, float[] startLight) {
+		this.nx = nx;
+		this.ny = ny;
+		this.nz = nz;
+		counts = new byte[5][nx * ny][];
+		passed = new float[5][nz + 1];
+		for (int k = 0; k < 5; k++) {
+			//the same steps the sweep takes, so the light matches it exactly
+			passed[k][0] = startLight[k];
+			for (int i = 1; i <= nz; i++) {
+				passed[k][i] = (float)(.2 * passed[k][i - 1]);
+			}
+		}
+	}
+
+	//path of light from direction k that goes through cell (x, y, z)
+	private int path(int k, int x, int y, int z) {
+		if (k == NORTH)
+			y = ((y - z) % ny + ny) % ny;
+		else if (k == SOUTH)
+			y = (y + z) % ny;
+		else if (k == EAST)
+			x = ((x - z) % nx + nx) % nx;
+		else if (k == WEST)
+			x = (x + z) % nx;
+		return y * nx + x;
+	}
+
+	//adds an occupied cell (change 1) or removes one (change -1) from the paths through it
+	void change(int x, int y, int z, int change) {
+		for (int k = 0; k < 5; k++) {
+			int p = path(k, x, y, z);
+			byte[] path = counts[k][p];
+			if (path == null) {
+				path = new byte[nz + 1];
+				counts[k][p] = path;
+			}
+			else if (shared != null && shared[k][p]) {
+				path = path.clone();
+				counts[k][p] = path;
+			}
+			if (shared != null)
+				shared[k][p] = false;
+			for (int i = 0; i < z; i++) {
+				path[i] += change;
+			}
+			if (path[0] == 0) { //the count is largest at the bottom
+				counts[k][p] = null;
+			}
+		}
+	}
+
+	//starts from the counts of another ColumnLight with the same cells, the paths are shared until either one changes them
+	void share(ColumnLight from) {
+		if (from.shared == null)
+			from.shared = new boolean[5][nx * ny];
+		shared = new boolean[5][nx * ny];
+		for (int k = 0; k < 5; k++) {
+			counts[k] = from.counts[k].clone();
+			Arrays.fill(from.shared[k], true);
+			Arrays.fill(shared[k], true);
+		}
+	}
+
+	//light coming into cell (x, y, z), in the order the sweep adds it up
+	float light(int x, int y, int z) {
+		return passed(DOWN, x, y, z) + passed(NORTH, x, y, z) + passed(SOUTH, x, y, z) + passed(EAST, x, y, z) + passed(WEST, x, y, z);
+	}
+
+	//light coming into cell (x, y, z) from direction k
+	private float passed(int k, int x, int y, int z) {
+		byte[] path = counts[k][path(k, x, y, z)];
+		return passed[k][path == null ? 0 : path[z] & 0xff];
+	}
+}
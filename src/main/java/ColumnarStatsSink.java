@@ -0,0 +1,108 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+//writes the yearly statistics to a compact binary file by columns. Records are gathered into blocks of up to
+//BLOCK_ROWS rows and each block is written column after column, so one measure can be read without the others.
+//layout, little endian: MAGIC, VERSION, then for the trees and the stand the number of columns and each column name
+//(length and UTF-8 bytes). Then blocks: the table (0 trees, 1 stand), the number of rows, the seeds as longs, then
+//each column as floats
+public class ColumnarStatsSink implements StatsSink {
+	static final int MAGIC = 0x5a535441;
+	static final int VERSION = 1;
+	static final int BLOCK_ROWS = 4096;
+
+	private FileChannel channel;
+	private final Table trees = new Table(0, TreeStats.COLUMNS.length);
+	private final Table stand = new Table(1, StandStats.COLUMNS.length);
+
+	//records of one kind that are not written yet
+	private class Table {
+		final int id;
+		final long[] seeds = new long[BLOCK_ROWS];
+		final float[][] columns;
+		final float[] row;
+		int rows = 0;
+
+		Table(int id, int columnCount) {
+			this.id = id;
+			columns = new float[columnCount][BLOCK_ROWS];
+			row = new float[columnCount];
+		}
+
+		void add(YearStats stats) {
+			stats.values(row);
+			seeds[rows] = stats.seed;
+			for (int c = 0; c < row.length; c++) {
+				columns[c][rows] = row[c];
+			}
+			if (++rows == BLOCK_ROWS)
+				flush();
+		}
+
+		void flush() {
+			if (rows == 0)
+				return;
+			ByteBuffer block = ByteBuffer.allocate(8 + 8 * rows + 4 * rows * columns.length).order(ByteOrder.LITTLE_ENDIAN);
+			block.putInt(id);
+			block.putInt(rows);
+			block.asLongBuffer().put(seeds, 0, rows);
+			block.position(block.position() + 8 * rows);
+			for (float[] column: columns) {
+				block.asFloatBuffer().put(column, 0, rows);
+				block.position(block.position() + 4 * rows);
+			}
+			block.flip();
+			write(block);
+			rows = 0;
+		}
+	}
+
+	ColumnarStatsSink(File file) throws IOException {
+		channel = new FileOutputStream(file).getChannel();
+		ByteBuffer header = ByteBuffer.allocate(1 << 12).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(MAGIC);
+		header.putInt(VERSION);
+		for (String[] names: new String[][] {TreeStats.COLUMNS, StandStats.COLUMNS}) {
+			header.putInt(names.length);
+			for (String name: names) {
+				byte[] bytes = name.getBytes("UTF-8");
+				header.putInt(bytes.length);
+				header.put(bytes);
+			}
+		}
+		header.flip();
+		write(header);
+	}
+
+	private void write(ByteBuffer bytes) {
+		try {
+			while (bytes.hasRemaining()) {
+				channel.write(bytes);
+			}
+		}
+		catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	public synchronized void tree(TreeStats stats) {
+		trees.add(stats);
+	}
+
+	public synchronized void stand(StandStats stats) {
+		stand.add(stats);
+	}
+
+	public synchronized void close() throws IOException {
+		if (channel == null)
+			return;
+		trees.flush();
+		stand.flush();
+		channel.close();
+		channel = null;
+	}
+}
@@ -0,0 +1,64 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+//writes the yearly statistics as comma separated text through buffered writers, one file for the trees and one for
+//the stand. Each file starts with a line of column names, the first column is the seed of the simulation
+public class CsvStatsSink implements StatsSink {
+	private Writer trees; //null if tree statistics are not wanted
+	private Writer stand; //null if stand statistics are not wanted
+	private final StringBuilder line = new StringBuilder();
+
+	//either file can be null
+	CsvStatsSink(File treesFile, File standFile) throws IOException {
+		if (treesFile != null)
+			trees = open(treesFile, TreeStats.COLUMNS);
+		if (standFile != null)
+			stand = open(standFile, StandStats.COLUMNS);
+	}
+
+	private static Writer open(File file, String[] columns) throws IOException {
+		Writer out = new BufferedWriter(new FileWriter(file), 1 << 16);
+		out.write("seed");
+		for (String column: columns) {
+			out.write(',');
+			out.write(column);
+		}
+		out.write('\n');
+		return out;
+	}
+
+	public synchronized void tree(TreeStats stats) {
+		write(trees, stats);
+	}
+
+	public synchronized void stand(StandStats stats) {
+		write(stand, stats);
+	}
+
+	private void write(Writer out, YearStats stats) {
+		if (out == null)
+			return;
+		line.setLength(0);
+		line.append(stats.seed).append(',');
+		stats.appendCsv(line);
+		line.append('\n');
+		try {
+			out.append(line);
+		}
+		catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	public synchronized void close() throws IOException {
+		if (trees != null)
+			trees.close();
+		if (stand != null)
+			stand.close();
+		trees = null;
+		stand = null;
+	}
+}
@@ -0,0 +1,9 @@
+import java.nio.LongBuffer;
+
+//computes directional light for a run of cells in one row of a layer, from the layer above
+public interface DirectionalKernel {
+	//above and out hold the light leaving each cell of the layer above and of this layer in each direction (DNSEW),
+	//in the light coming into each cell of this layer. The run is n cells long and starts at position p in the planes,
+	//which are rowStride wide, and at cell c in occupied. Must give the same results as VoxelGrid.propagateDirectional
+	void propagateRow(float[][] above, float[][] out, float[] in, int rowStride, LongBuffer occupied, int p, int c, int n);
+}
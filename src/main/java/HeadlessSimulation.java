@@ -0,0 +1,30 @@
+//runs the experiments of Simulation without a window, for machines with no display. Nothing here touches the
+//graphics classes, so they do not need to be on the class path:
+//  java -cp <classes and vecmath> HeadlessSimulation carbon
+public class HeadlessSimulation {
+
+	public static void main(String[] args) {
+		String experiment = args.length > 0 ? args[0] : "";
+		SimulationView view = SimulationView.NONE;
+		if (experiment.equals("carbon"))
+			Simulation.experimentMaximizeCarbonUptake(view);
+		else if (experiment.equals("timber"))
+			Simulation.experimentMaximizeTimberProduction(view);
+		else if (experiment.equals("carbon-adaptive"))
+			Simulation.experimentMaximizeCarbonUptakeAdaptive(view);
+		else if (experiment.equals("timber-adaptive"))
+			Simulation.experimentMaximizeTimberProductionAdaptive(view);
+		else if (experiment.equals("com"))
+			Simulation.experiment30TreesPrintCOM(view);
+		else if (experiment.equals("heightdiameter"))
+			Simulation.experiment30TreesPrintHeightDiameterRelationship(view);
+		else if (experiment.equals("mlms"))
+			Simulation.experiment30TreesPrintMlMsRelationship(view);
+		else if (experiment.equals("mtml"))
+			Simulation.experiment30TreesPrintMtMlRelationship(view);
+		else {
+			System.err.println("usage: HeadlessSimulation carbon | timber | carbon-adaptive | timber-adaptive | com | heightdiameter | mlms | mtml");
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,50 @@
+import java.util.Random;
+
+//times full light updates with the scalar and the vector kernel on grids of the sizes we usually run, single threaded
+//to include the vector kernel, put the classes from src/vector/java on the class path and run with
+//--add-modules jdk.incubator.vector
+public class LightBenchmark {
+	static final float[] PLOT_SIDES = {10, 20, 30}; //meters
+	static final float CANOPY_FILL = 0.02f; //fraction of the cells between 1 and 5 meters that are occupied
+	static final int WARMUP = 10;
+	static final int RUNS = 30;
+
+	public static void main(String[] args) {
+		if (VoxelGrid.loadVectorKernel() == null) {
+			System.out.println("vector kernel not available, only timing the scalar loop");
+		}
+		for (float side : PLOT_SIDES) {
+			SimulationParams params = SimulationParams.createSimulationParamsEquator();
+			params.size = new Vector3(side, side, 7);
+			params.lightThreads = 1;
+			double scalar = time(params, false);
+			System.out.print(side + " m plot: scalar " + scalar + " ms");
+			if (VoxelGrid.loadVectorKernel() != null) {
+				double vector = time(params, true);
+				System.out.print(", vector " + vector + " ms, speedup " + (scalar / vector));
+			}
+			System.out.println();
+		}
+	}
+
+	//average time of a full light update in milliseconds
+	static double time(SimulationParams params, boolean vectorLight) {
+		params.vectorLight = vectorLight;
+		VoxelGrid voxels = new VoxelGrid(params);
+		Random random = new Random(1);
+		int from = (int)(1 / params.vGridCellSize);
+		int to = (int)(5 / params.vGridCellSize);
+		long cells = (long)voxels.nx * voxels.ny * (to - from);
+		for (long i = 0; i < cells * CANOPY_FILL; i++) {
+			voxels.setCellFull(voxels.index(random.nextInt(voxels.nx), random.nextInt(voxels.ny), from + random.nextInt(to - from)), true);
+		}
+		for (int i = 0; i < WARMUP; i++) {
+			voxels.updateLight();
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < RUNS; i++) {
+			voxels.updateLight();
+		}
+		return (System.nanoTime() - start) / 1e6 / RUNS;
+	}
+}
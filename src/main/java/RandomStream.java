@@ -0,0 +1,29 @@
+//counter-based random numbers: the i-th number of a stream is worked out from the seed of the stream and i alone, so
+//nothing is shared between threads and the numbers do not depend on the order they are asked for in. A stream can be
+//split into independent streams by key: the simulation has one stream, each tree one split from it by tree index,
+//and each year of a tree one split from that by the age of the tree
+public class RandomStream {
+	private static final long GOLDEN = 0x9e3779b97f4a7c15L;
+	final long seed;
+
+	RandomStream(long seed) {
+		this.seed = seed;
+	}
+
+	//an independent stream for the given key
+	RandomStream split(long key) {
+		return new RandomStream(mix(seed + GOLDEN * (key + 1)));
+	}
+
+	//the i-th number of the stream, in [0, 1)
+	double get(long i) {
+		return (mix(seed ^ mix(i * GOLDEN)) >>> 11) * 0x1.0p-53;
+	}
+
+	//mixes the bits of z, the finalizer of SplitMix64
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+}
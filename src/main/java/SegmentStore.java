@@ -0,0 +1,822 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+// The segments of a tree, kept in parallel arrays with one entry per segment instead of one object per segment.
+// A segment is known by its index, the root is index 0. Children are linked through firstChild and nextSibling
+// in the order they sprouted. A segment starts where its parent ends, so only the end of each segment is kept.
+// Has the functions for updating, deleting, and calculating aspects of biological model
+
+public class SegmentStore {
+  static final int ROOT = 0;
+  static final int NONE = -1; //no segment
+  private final TreeParams tParams;
+  final SimulationParams sParams;
+  int count = 0; //number of slots handed out, including the slots of dead segments
+  boolean[] dead; //true for segments removed from the tree, their slots are reused for new segments
+  private int[] freeSlots = new int[16]; //slots of dead segments
+  private int freeCount = 0;
+  float baseX, baseY, baseZ; //start of the root
+  float[] segWidth;
+  float[] endX, endY, endZ; //end of each segment
+  float[] dirX, dirY, dirZ; //length and direction
+  int[] endCell; //index of the cell in the voxel grid that the end of the segment is in
+  int[] age;
+  int[] segParent; //the segment from which this segment sprouts, NONE for the root
+  int[] firstChild, lastChild, nextSibling; //links to the segments that sprout directly from this one
+  int[] childCount;
+  //aggregates of a segment, only up to date if aggregatedIn of the segment is the current generation
+  float[] massWithDescendants; //mass of this segment and all descendants of it
+  float[] leafMassWithDescendants; //total leaf mass of this segment and all descendants of it
+  float[] windHorizontalForceWithDescendants; //force due to wind on this segment and its descendants
+  float[] carbonProducedWithDescendants; //carbon budget generated from everything descending from this segment
+  float[] centerOfMassX, centerOfMassY, centerOfMassZ; //center of mass of everything branching from this segment (including itself)
+  float[] centerOfWindX, centerOfWindY, centerOfWindZ; //center of wind force of everything branching from this segment (including itself)
+  int[] aggregatedIn; //generation in which the aggregates of each segment were worked out
+  int generation = 1; //goes up whenever every aggregate becomes out of date, 0 is never current
+  //aggregates are kept from year to year. Whatever changes a segment (a new width, a new or removed child, no longer
+  //being a leaf) marks it and the segments above it as out of date, and only those are worked out again
+  private int[] order = new int[64]; //reusable buffer for segments in pre-order, filled by preOrder
+  int[] byAge = new int[64]; //reusable buffer for segments from oldest to youngest, filled by sortByAge
+  private int[] ageCounts = new int[16]; //scratch for sortByAge
+  private double[] draws = new double[256]; //random numbers for branching this year, four for each segment
+  float branchAngleFactor; //of the tree this year
+  CellClaims claims; //if not null, changes to the voxel grid are recorded here instead of being made
+  private float[] entryBudget; //carbon budget each segment on the current path started with in updateSegmentWidth
+
+  SegmentStore(TreeParams paramsIn, SimulationParams sParamsIn) {
+	tParams = paramsIn;
+	sParams = sParamsIn;
+	allocate(64);
+  }
+
+  //creates the root of the tree
+  int addRoot(Vector3 segmentStart, Vector3 segmentDir, VoxelGrid voxels) {
+	baseX = segmentStart.x;
+	baseY = segmentStart.y;
+	baseZ = segmentStart.z;
+	Vector3 end = segmentStart.plus(segmentDir);
+	return add(NONE, end, segmentDir, voxels.cellIndex(end));
+  }
+
+  //creates a segment that ends at the given point in the given cell, it is not a child of parent until addChild is called
+  private int add(int parent, Vector3 end, Vector3 segmentDir, int cell) {
+	int s;
+	if (freeCount > 0) {
+		s = freeSlots[--freeCount];
+	}
+	else {
+		if (count == segWidth.length) {
+			allocate(count * 2);
+		}
+		s = count++;
+	}
+	dead[s] = false;
+	segWidth[s] = .01f;
+	endX[s] = end.x;
+	endY[s] = end.y;
+	endZ[s] = end.z;
+	dirX[s] = segmentDir.x;
+	dirY[s] = segmentDir.y;
+	dirZ[s] = segmentDir.z;
+	endCell[s] = cell;
+	age[s] = 0;
+	segParent[s] = parent;
+	firstChild[s] = NONE;
+	lastChild[s] = NONE;
+	nextSibling[s] = NONE;
+	childCount[s] = 0;
+	carbonProducedWithDescendants[s] = 0;
+	aggregatedIn[s] = 0;
+	return s;
+  }
+
+  //makes room for the given number of segments
+  private void allocate(int capacity) {
+	segWidth = grow(segWidth, capacity);
+	endX = grow(endX, capacity);
+	endY = grow(endY, capacity);
+	endZ = grow(endZ, capacity);
+	dirX = grow(dirX, capacity);
+	dirY = grow(dirY, capacity);
+	dirZ = grow(dirZ, capacity);
+	endCell = grow(endCell, capacity);
+	age = grow(age, capacity);
+	segParent = grow(segParent, capacity);
+	firstChild = grow(firstChild, capacity);
+	lastChild = grow(lastChild, capacity);
+	nextSibling = grow(nextSibling, capacity);
+	childCount = grow(childCount, capacity);
+	dead = grow(dead, capacity);
+	massWithDescendants = grow(massWithDescendants, capacity);
+	leafMassWithDescendants = grow(leafMassWithDescendants, capacity);
+	windHorizontalForceWithDescendants = grow(windHorizontalForceWithDescendants, capacity);
+	carbonProducedWithDescendants = grow(carbonProducedWithDescendants, capacity);
+	centerOfMassX = grow(centerOfMassX, capacity);
+	centerOfMassY = grow(centerOfMassY, capacity);
+	centerOfMassZ = grow(centerOfMassZ, capacity);
+	centerOfWindX = grow(centerOfWindX, capacity);
+	centerOfWindY = grow(centerOfWindY, capacity);
+	centerOfWindZ = grow(centerOfWindZ, capacity);
+	aggregatedIn = grow(aggregatedIn, capacity);
+	entryBudget = grow(entryBudget, capacity);
+  }
+
+  private static float[] grow(float[] values, int capacity) {
+	return values == null ? new float[capacity] : Arrays.copyOf(values, capacity);
+  }
+
+  private static int[] grow(int[] values, int capacity) {
+	return values == null ? new int[capacity] : Arrays.copyOf(values, capacity);
+  }
+
+  private static boolean[] grow(boolean[] values, int capacity) {
+	return values == null ? new boolean[capacity] : Arrays.copyOf(values, capacity);
+  }
+
+  //writes every segment, including the dead ones and the aggregates, so that the tree carries on exactly as it would have
+  void writeCheckpoint(Checkpoint out) throws IOException {
+	out.putInt(count);
+	out.putInt(freeCount);
+	out.putInts(freeSlots, freeCount);
+	out.putFloat(baseX);
+	out.putFloat(baseY);
+	out.putFloat(baseZ);
+	out.putInt(generation);
+	out.putBooleans(dead, count);
+	for (float[] values: floatArrays()) {
+		out.putFloats(values, count);
+	}
+	for (int[] values: intArrays()) {
+		out.putInts(values, count);
+	}
+  }
+
+  //reads the segments written by writeCheckpoint into an empty store
+  void readCheckpoint(Checkpoint in) throws IOException {
+	count = in.getInt();
+	allocate(Math.max(count, 64));
+	freeCount = in.getInt();
+	freeSlots = new int[Math.max(freeCount, 16)];
+	in.getInts(freeSlots, freeCount);
+	baseX = in.getFloat();
+	baseY = in.getFloat();
+	baseZ = in.getFloat();
+	generation = in.getInt();
+	in.getBooleans(dead, count);
+	for (float[] values: floatArrays()) {
+		in.getFloats(values, count);
+	}
+	for (int[] values: intArrays()) {
+		in.getInts(values, count);
+	}
+  }
+
+  //a copy of the segments for a fork of the tree that grows with the given parameters. Unlike the voxel grid the
+  //segments are copied outright, every segment ages and most widen each year so nothing would stay shared for long.
+  //The aggregates are worked out again in case the parameters they depend on changed
+  SegmentStore fork(TreeParams paramsIn, SimulationParams sParamsIn) {
+	SegmentStore copy = new SegmentStore(paramsIn, sParamsIn);
+	copy.allocate(Math.max(count, 64));
+	copy.count = count;
+	copy.freeSlots = freeSlots.clone();
+	copy.freeCount = freeCount;
+	copy.baseX = baseX;
+	copy.baseY = baseY;
+	copy.baseZ = baseZ;
+	copy.generation = generation;
+	System.arraycopy(dead, 0, copy.dead, 0, count);
+	float[][] floats = floatArrays(), copyFloats = copy.floatArrays();
+	for (int i = 0; i < floats.length; i++) {
+		System.arraycopy(floats[i], 0, copyFloats[i], 0, count);
+	}
+	int[][] ints = intArrays(), copyInts = copy.intArrays();
+	for (int i = 0; i < ints.length; i++) {
+		System.arraycopy(ints[i], 0, copyInts[i], 0, count);
+	}
+	copy.invalidateAggregates();
+	return copy;
+  }
+
+  //the per segment arrays of floats that are kept in a checkpoint or copied to a fork
+  private float[][] floatArrays() {
+	return new float[][] {segWidth, endX, endY, endZ, dirX, dirY, dirZ, massWithDescendants, leafMassWithDescendants,
+			windHorizontalForceWithDescendants, carbonProducedWithDescendants, centerOfMassX, centerOfMassY,
+			centerOfMassZ, centerOfWindX, centerOfWindY, centerOfWindZ};
+  }
+
+  //the per segment arrays of ints that are kept in a checkpoint or copied to a fork
+  private int[][] intArrays() {
+	return new int[][] {endCell, age, segParent, firstChild, lastChild, nextSibling, childCount, aggregatedIn};
+  }
+
+  //marks the aggregates of every segment as out of date, for when the parameters they are worked out from change
+  void invalidateAggregates() {
+	  generation++;
+  }
+
+  //marks the aggregates of a segment and the segments it descends from as out of date
+  //a segment whose aggregates are up to date always has children whose aggregates are up to date, so this can stop
+  //at the first segment that is already out of date
+  void invalidateAggregates(int s) {
+	  for (; s != NONE && aggregatedIn[s] == generation; s = segParent[s]) {
+		  aggregatedIn[s] = 0;
+	  }
+  }
+
+  public void ageOneYear(int s) {
+	  age[s]++;
+	  if (age[s] == tParams.maxLeafAge() + 1) { //the leaves are gone, which changes the aggregates
+		  invalidateAggregates(s);
+	  }
+  }
+
+  //start of the segment, the end of its parent
+  float startX(int s) {
+	  return segParent[s] == NONE ? baseX : endX[segParent[s]];
+  }
+
+  float startY(int s) {
+	  return segParent[s] == NONE ? baseY : endY[segParent[s]];
+  }
+
+  float startZ(int s) {
+	  return segParent[s] == NONE ? baseZ : endZ[segParent[s]];
+  }
+
+  //adds a segment to the end of the children of another
+  void addChild(int s, int c) {
+	  if (lastChild[s] == NONE) {
+		  firstChild[s] = c;
+	  }
+	  else {
+		  nextSibling[lastChild[s]] = c;
+	  }
+	  lastChild[s] = c;
+	  nextSibling[c] = NONE;
+	  childCount[s]++;
+	  invalidateAggregates(s);
+  }
+
+  //fills order with top and everything descending from it in pre-order and returns how many segments that is
+  int preOrder(int top) {
+	  if (order.length < count) {
+		  order = new int[segWidth.length];
+	  }
+	  int n = 0;
+	  for (int s = top; s != NONE; s = nextInPreOrder(s, top)) {
+		  order[n++] = s;
+	  }
+	  return n;
+  }
+
+  //fills byAge with top and everything descending from it, oldest first and in pre-order among segments of the same
+  //age, and returns how many segments that is. Ages are small, so this counts them instead of comparing segments
+  int sortByAge(int top) {
+	  int n = preOrder(top);
+	  if (byAge.length < n) {
+		  byAge = new int[order.length];
+	  }
+	  int oldest = 0;
+	  for (int i = 0; i < n; i++) {
+		  oldest = Math.max(oldest, age[order[i]]);
+	  }
+	  if (ageCounts.length < oldest + 2) {
+		  ageCounts = new int[oldest + 2];
+	  }
+	  else {
+		  Arrays.fill(ageCounts, 0, oldest + 2, 0);
+	  }
+	  for (int i = 0; i < n; i++) { //segments of each age, oldest first
+		  ageCounts[oldest - age[order[i]] + 1]++;
+	  }
+	  for (int a = 1; a <= oldest; a++) { //where the segments of each age start
+		  ageCounts[a] += ageCounts[a - 1];
+	  }
+	  for (int i = 0; i < n; i++) {
+		  byAge[ageCounts[oldest - age[order[i]]]++] = order[i];
+	  }
+	  return n;
+  }
+
+  //the segment after s in pre-order among top and its descendants, NONE if s is the last one
+  int nextInPreOrder(int s, int top) {
+	  if (firstChild[s] != NONE) {
+		  return firstChild[s];
+	  }
+	  return nextAfterDescendants(s, top);
+  }
+
+  //the segment after the descendants of s in pre-order among top and its descendants, NONE if there is none
+  int nextAfterDescendants(int s, int top) {
+	  while (s != top) {
+		  if (nextSibling[s] != NONE) {
+			  return nextSibling[s];
+		  }
+		  s = segParent[s];
+	  }
+	  return NONE;
+  }
+
+  //works out the aggregates of top and everything descending from it that are out of date, children before parents
+  //every aggregate is worked out at most once per generation, however often it is asked for
+  void computeAggregates(int top) {
+	  if (order.length < count) {
+		  order = new int[segWidth.length];
+	  }
+	  int n = 0;
+	  int s = top;
+	  while (s != NONE) {
+		  if (aggregatedIn[s] == generation) { //so is everything below it
+			  s = nextAfterDescendants(s, top);
+		  }
+		  else {
+			  order[n++] = s;
+			  s = nextInPreOrder(s, top);
+		  }
+	  }
+	  for (int i = n - 1; i >= 0; i--) {
+		  aggregate(order[i]);
+	  }
+  }
+
+  //makes sure the aggregates of a segment are up to date
+  private void aggregates(int s) {
+	  if (aggregatedIn[s] != generation) {
+		  computeAggregates(s);
+	  }
+  }
+
+  //works out the aggregates of one segment from its own values and the aggregates of its children
+  private void aggregate(int s) {
+	  boolean leaf = isLeaf(s);
+	  float descendantsMass = 0;
+	  float leafMass = 0;
+	  float totalForce = 0;
+	  if (leaf) {
+		  float leafArea = tParams.leafArea();
+		  totalForce += 0.5 * tParams.dragCoefficient() * sParams.airDensity * leafArea * sParams.maxWindSpeed * sParams.maxWindSpeed;
+	  }
+	  for (int c = firstChild[s]; c != NONE; c = nextSibling[c]) {
+		  descendantsMass += massWithDescendants[c];
+		  leafMass += leafMassWithDescendants[c];
+		  totalForce += windHorizontalForceWithDescendants[c];
+	  }
+	  if (leaf) {
+		  leafMass += tParams.massOfLeaf();
+	  }
+	  massWithDescendants[s] = getSegmentMass(s) + descendantsMass;
+	  leafMassWithDescendants[s] = leafMass;
+	  windHorizontalForceWithDescendants[s] = totalForce;
+
+	  //center of mass
+	  float totalMass = getSegmentMass(s);
+	  float half = 0.5f*getSegmentMass(s);
+	  float momentX = (startX(s) + endX[s]) * half;
+	  float momentY = (startY(s) + endY[s]) * half;
+	  float momentZ = (startZ(s) + endZ[s]) * half;
+	  for (int c = firstChild[s]; c != NONE; c = nextSibling[c]) {
+		  float mass = massWithDescendants[c] + leafMassWithDescendants[c];
+		  totalMass += mass;
+		  momentX += centerOfMassX[c] * mass;
+		  momentY += centerOfMassY[c] * mass;
+		  momentZ += centerOfMassZ[c] * mass;
+	  }
+	  float scale = 1 / totalMass;
+	  centerOfMassX[s] = momentX * scale;
+	  centerOfMassY[s] = momentY * scale;
+	  centerOfMassZ[s] = momentZ * scale;
+
+	  //center of wind force
+	  float windForce = 0;
+	  momentX = 0;
+	  momentY = 0;
+	  momentZ = 0;
+	  if (leaf) {
+		  momentX += endX[s] * totalForce;
+		  momentY += endY[s] * totalForce;
+		  momentZ += endZ[s] * totalForce;
+		  windForce += totalForce;
+	  }
+	  for (int c = firstChild[s]; c != NONE; c = nextSibling[c]) {
+		  float force = windHorizontalForceWithDescendants[c];
+		  windForce += force;
+		  momentX += centerOfWindX[c] * force;
+		  momentY += centerOfWindY[c] * force;
+		  momentZ += centerOfWindZ[c] * force;
+	  }
+	  if (windForce != 0f) {
+		  scale = 1/windForce;
+		  momentX *= scale;
+		  momentY *= scale;
+		  momentZ *= scale;
+	  }
+	  centerOfWindX[s] = momentX;
+	  centerOfWindY[s] = momentY;
+	  centerOfWindZ[s] = momentZ;
+	  aggregatedIn[s] = generation;
+  }
+
+  //function that updates the width of the segments based on stress as long as carbon budget is still available
+  //also kills a branch if it produces less carbon than it uses to grow in width
+  //goes through the segments in post-order without recursion, a segment is only widened after all of its children
+  //once the budget is negative nothing below a segment is looked at. When a branch is killed, the sibling after it is
+  //passed over for the year
+  float updateSegmentWidth(int top, VoxelGrid voxels, float carbonBudget) {
+	float cBudget = carbonBudget;
+	int s = top;
+	boolean down = true; //true when s has just been reached from its parent or previous sibling
+	while (true) {
+		if (down) {
+			entryBudget[s] = cBudget;
+			if (cBudget >= 0 && firstChild[s] != NONE) {
+				s = firstChild[s];
+				continue;
+			}
+		}
+		int sibling = nextSibling[s];
+		if (entryBudget[s] >= 0) {
+			if (cBudget > 0) {
+				aggregates(s); //only what changed below s is worked out again
+				float previousMass = getSegmentDryMass(s);
+				segWidth[s] += computeWidthByStress(s);
+				cBudget -= (getSegmentDryMass(s) - previousMass);
+				invalidateAggregates(s);
+				aggregate(s); //the children are still up to date, so only s itself
+			}
+			//kills branch if it doesn't produce as much as it used
+			if (carbonProducedWithDescendants[s] != 0 && entryBudget[s]-cBudget > carbonProducedWithDescendants[s]) {
+				if (segParent[s] != NONE) {
+					if (sibling != NONE)
+						sibling = nextSibling[sibling];
+					removeSubtree(s, voxels);
+				}
+				else
+					releaseCells(s, voxels); //the root stays, only its cells and those of its descendants are emptied
+			}
+		}
+		if (s == top) {
+			return cBudget;
+		}
+		if (sibling != NONE) {
+			s = sibling;
+			down = true;
+		}
+		else {
+			s = segParent[s];
+			down = false;
+		}
+	}
+  }
+
+  //empties the cells of a segment and all of its descendants in the voxel grid
+  private void releaseCells(int s, VoxelGrid voxels) {
+	  int n = preOrder(s);
+	  for (int i = 0; i < n; i++) {
+		  order[i] = endCell[order[i]];
+	  }
+	  emptyCells(order, n, voxels);
+  }
+
+  //empties the cells in cells[0, n), or records that they are to be emptied
+  private void emptyCells(int[] cells, int n, VoxelGrid voxels) {
+	  if (claims != null)
+		  claims.release(cells, 0, n);
+	  else
+		  voxels.setCellsEmpty(cells, 0, n);
+  }
+
+  //removes a segment and all of its descendants from the tree: empties their cells, marks them dead and frees their
+  //slots for new segments. s keeps its parent so a walk that is at s can carry on from there
+  void removeSubtree(int s, VoxelGrid voxels) {
+	  int n = preOrder(s);
+	  if (freeCount + n > freeSlots.length) {
+		  freeSlots = Arrays.copyOf(freeSlots, Math.max(freeSlots.length * 2, freeCount + n));
+	  }
+	  for (int i = 0; i < n; i++) {
+		  int d = order[i];
+		  dead[d] = true;
+		  freeSlots[freeCount++] = d;
+		  order[i] = endCell[d];
+	  }
+	  emptyCells(order, n, voxels);
+	  removeChild(segParent[s], s);
+  }
+
+  //removes a new segment whose cell was claimed by another tree first, it has no children and its cell is not its own
+  void discard(int s) {
+	  if (freeCount == freeSlots.length) {
+		  freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+	  }
+	  dead[s] = true;
+	  freeSlots[freeCount++] = s;
+	  removeChild(segParent[s], s);
+  }
+
+  //draws the random numbers for branching the first n segments of byAge this year, the numbers of a segment come from
+  //its own place in the stream for the year
+  void drawForYear(RandomStream year, int n) {
+	  if (draws.length < 4 * segWidth.length) {
+		  draws = new double[4 * segWidth.length];
+	  }
+	  for (int i = 0; i < n; i++) {
+		  int s = byAge[i];
+		  for (int k = 0; k < 4; k++) {
+			  draws[4 * s + k] = year.get(4L * s + k);
+		  }
+	  }
+  }
+
+  //branches and creates new segments according to light availability at the branching site (end of segment)
+  float updateSegmentBranching(int s, VoxelGrid voxels, float carbonBudget) {
+	  float cBudget = carbonBudget;
+	  // create new child branches if has not made 3 children already, chance of branching otherwise is proportional to amount of light at end of seg.
+		  if (childCount[s] <= 3 && (int)(draws[4 * s] * (1 / voxels.getLight(endCell[s]))) == 0) {
+			  Vector3 randomVector = new Vector3(((float)draws[4 * s + 1] - 0.5f),
+					  ((float)draws[4 * s + 2] - 0.5f),
+					  ((float)draws[4 * s + 3] - 0.5f));
+			  randomVector.scale(branchAngleFactor);
+			  Vector3 newDirection = direction(s).plus(randomVector);
+			  newDirection.normalize();
+			  newDirection.scale(tParams.segmentLength());
+			  Vector3 newEnd = end(s).plus(newDirection); //new Segment branches in random direction, maximum branch angle dependent on branch angle factor
+			  int cell = voxels.cellIndex(newEnd);
+			  if (!(voxels.cellFull(cell)) && (claims == null || !claims.claimed(cell))) //if there not already a branch taking up the space where the end of the segment would be
+			  {
+				  int newSegment = add(s, newEnd, newDirection, cell);
+				  if (claims != null)
+					  claims.claim(cell, newSegment); //the cell is only filled if no tree before this one claims it too
+				  else
+					  voxels.setCellFull(cell, true); //set that cell in the voxelgrid to be full
+				  addChild(s, newSegment); //add the segment as a child
+				  cBudget -= getSegmentDryMass(newSegment);
+			  }
+		  }
+	  return cBudget;
+  }
+
+  //gets the amount of carbon available for growth based on incident light in one year
+  float computeCarbonBudget(int top, VoxelGrid voxels) {
+	  for (int i = preOrder(top) - 1; i >= 0; i--) {
+		  int s = order[i];
+		  float budget = 0.0f;
+		  for (int c = firstChild[s]; c != NONE; c = nextSibling[c]) {
+			  budget += carbonProducedWithDescendants[c];
+		  }
+		  if (isLeaf(s)) {
+			  float leafBudget = calculateCarbonForLeaf(s, voxels);
+			  leafBudget -= leafBudget * tParams.rootApportion();
+			  leafBudget -= tParams.leafDryMass();
+			  budget += leafBudget;
+		  }
+		  carbonProducedWithDescendants[s] = budget;
+	  }
+	  return carbonProducedWithDescendants[top];
+  }
+
+  //returns the mass of the leaves of this segment and everything descending from it
+  float getMassOfLeaves(int s) {
+	  aggregates(s);
+	  return leafMassWithDescendants[s];
+  }
+
+  //removes a child from the children of a segment
+  void removeChild(int s, int c) {
+	  int previous = NONE;
+	  for (int i = firstChild[s]; i != c; i = nextSibling[i]) {
+		  previous = i;
+	  }
+	  if (previous == NONE) {
+		  firstChild[s] = nextSibling[c];
+	  }
+	  else {
+		  nextSibling[previous] = nextSibling[c];
+	  }
+	  if (lastChild[s] == c) {
+		  lastChild[s] = previous;
+	  }
+	  nextSibling[c] = NONE;
+	  childCount[s]--;
+	  invalidateAggregates(s);
+  }
+
+  //uses Monteith photosynthesis equation to calculate the net biomass accumulation of the canopy at each leaf
+  float calculateCarbonForLeaf(int s, VoxelGrid voxels) {
+	  float lightPerSquareMeter = sParams.totalSunlightIncident; //light incident on square meter in one year, in MJ
+	  float leafArea = tParams.leafArea(); //set in TreeParams
+	  float lightPerLeaf = lightPerSquareMeter * leafArea * (float)voxels.getLight(endCell[s]); //amount of light incident on one leaf in a year
+	  float e = tParams.efficiency(); //efficiency of leaves, e in equation, kg/MJ
+	  float fs = tParams.fractionAbsorbed(); //fraction of light the is absorbed by canopy, fs in equation
+
+	  //Equation for net biomass accumulation from Monteith
+	  float availableCarbon = e * fs * lightPerLeaf;
+
+	  return availableCarbon;
+
+  }
+
+  //computes the width of a segment based on the stress on it from descendants
+  float computeWidthByStress(int s) {
+	  //stress from gravity, the aggregates of s have to be up to date
+	  float vx = centerOfMassX[s] - startX(s);
+	  float vy = centerOfMassY[s] - startY(s);
+	  float vz = centerOfMassZ[s] - startZ(s);
+	  float l = calculateDistance(vx, vy, vz);
+	  float vxy = calculateXY(vx, vy);
+	  float xF = (float) ((massWithDescendants[s] + leafMassWithDescendants[s]) * sParams.gravity * vz / l);
+	  float zF = (float) ((massWithDescendants[s] + leafMassWithDescendants[s]) * sParams.gravity * vxy / l);
+	  float stressG = computeStress(xF, zF, l, segWidth[s]);
+
+	  //stress from wind
+	  float windF = windHorizontalForceWithDescendants[s];
+	  float windVX = centerOfWindX[s] - startX(s);
+	  float windVY = centerOfWindY[s] - startY(s);
+	  float windVZ = centerOfWindZ[s] - startZ(s);
+	  float windL = calculateDistance(windVX, windVY, windVZ);
+	  float windZ = windVZ;
+	  float windXF = windF * calculateXY(windVX, windVY) / windL;
+	  float windZF = windF * windZ / windL;
+	  float stressW = computeStress(windXF, windZF, windL, segWidth[s]);
+
+	  //compute total stress
+	  float stress = stressW + stressG;
+	  float width = stress / tParams.stressProportion();
+	  return width;
+  }
+
+  // function that computes the total mass of this segment and everything that sprouts from it
+  float computeMassWithDescendants(int s) {
+	  aggregates(s);
+	  return massWithDescendants[s];
+  }
+
+  //computes the total dry leaf mass of this segment and everythind descending from it
+  float computeTotalDryLeafMass(int s) {
+	  return countLeaves(s) * tParams.leafDryMass();
+  }
+
+//find the horizontal wind force in Newtons
+  float getWindHorizontalForce(int s) {
+	  aggregates(s);
+	  return windHorizontalForceWithDescendants[s];
+  }
+
+  //returns the average location of wind force: equivalent of center of mass, but with forces
+  Vector3 getCenterOfWindForce(int s) {
+	  aggregates(s);
+	  return new Vector3(centerOfWindX[s], centerOfWindY[s], centerOfWindZ[s]);
+  }
+
+  //computes the stress given input forces, L and d, in Newtons/ m^2
+  float computeStress(float xF, float zF, float l, float d) {
+	  float partOne = (float) (1.273 / (d*d));
+	  float partTwo = (float) ((8 * l * zF / d) + xF);
+	  float stress = Math.abs(partOne * partTwo);
+	  return stress;
+  }
+
+  // gets the mass of a single segment
+  float getSegmentMass(int s) {
+	  float volume = (float) Math.PI * (segWidth[s] / 2) * (segWidth[s] / 2) * getLength();
+	  float mass = volume * (900); //900 kg/m3 is the density of oak wood
+	  return mass;
+  }
+
+  //returns the dry mass of a single segment
+  float getSegmentDryMass(int s) {
+	  return getSegmentMass(s) * (1 - tParams.getWoodWaterFraction());
+  }
+
+  //returns the height of the tree
+  float getHighestSegment(int top, float max) {
+	  for (int s = top; s != NONE; s = nextInPreOrder(s, top)) {
+		  if (endZ[s] > max) {
+			  max = endZ[s];
+		  }
+	  }
+	  return max;
+  }
+
+  //works out in one walk over the segments what the walks of timberMass, getHighestSegment, countDescendants and
+  //countLeaves each give: timber mass, height, number of segments and number of leaves. Adds up in pre-order like
+  //them, so the results are the same
+  void measure(int top, TreeStats into) {
+	  float timber = 0;
+	  float height = 0;
+	  int segments = 0;
+	  int leaves = 0;
+	  for (int s = top; s != NONE; s = nextInPreOrder(s, top)) {
+		  segments++;
+		  if (isLeaf(s))
+			  leaves++;
+		  if (endZ[s] > height)
+			  height = endZ[s];
+		  if (segWidth[s] > sParams.timberDiameter)
+			  timber += getSegmentMass(s);
+	  }
+	  into.timberMass = timber;
+	  into.height = height;
+	  into.segments = segments;
+	  into.leaves = leaves;
+  }
+
+  //returns the mass of this segment and its descendants that is wide enough to be used as timber, added up in pre-order
+  float timberMass(int top, float mass) {
+	  for (int s = top; s != NONE; s = nextInPreOrder(s, top)) {
+		  if (segWidth[s] > sParams.timberDiameter) {
+			  mass += getSegmentMass(s);
+		  }
+	  }
+	  return mass;
+  }
+
+  //calculates the distance of a 3d vector position from the origin
+  float calculateDistance (float x, float y, float z) {
+	  float lSquared = (x * x) + (y * y) + (z * z);
+	  float l = (float)Math.sqrt(lSquared);
+	  return l;
+  }
+
+  //calculates the hypotenuse of x and y triangle
+  float calculateXY (float x, float y) {
+	  float lSquared = (x * x) + (y * y);
+	  float l = (float)Math.sqrt(lSquared);
+	  return l;
+  }
+
+  // converts angle measure from degrees to radians
+  float radians(float deg) {
+    return deg * ((float)Math.PI / 180);
+  }
+
+  //returns true if the segment is a leaf
+  boolean isLeaf(int s) {
+    return age[s] <= tParams.maxLeafAge();
+  }
+
+  //checks whether any descendants of this segment have leaves
+  boolean descendantHasLeaf(int top) {
+    for (int s = top; s != NONE; s = nextInPreOrder(s, top))
+    {
+      if (isLeaf(s))
+        return true;
+    }
+    return false;
+  }
+
+  //counts the number of descendants that this segment has
+  int countDescendants(int top) {
+    int count = 0;
+    for (int s = top; s != NONE; s = nextInPreOrder(s, top))
+    {
+      count++;
+    }
+    return count;
+  }
+
+  //counts the number of leaves descending from this segment
+  int countLeaves(int top) {
+	  int count = 0;
+	  for (int s = top; s != NONE; s = nextInPreOrder(s, top))
+	    {
+	      if (isLeaf(s))
+	        count++;
+	    }
+	    return count;
+  }
+
+  //end of the segment
+  Vector3 end(int s) {
+	  return new Vector3(endX[s], endY[s], endZ[s]);
+  }
+
+  //length and direction of the segment
+  Vector3 direction(int s) {
+	  return new Vector3(dirX[s], dirY[s], dirZ[s]);
+  }
+
+  //age of the segment
+  int getAge(int s) {
+	  return age[s];
+  }
+
+  //length of the segment
+  float getLength() {
+	  return tParams.segmentLength();
+  }
+
+  //returns the center of mass of this segment plus all of its descendants
+  Vector3 centerOfMass(int s) {
+	  aggregates(s);
+	  return new Vector3(centerOfMassX[s], centerOfMassY[s], centerOfMassZ[s]);
+  }
+
+  //width/diameter of the segment
+  float getWidth(int s) {
+	  return segWidth[s];
+  }
+
+  //radius of the segment
+  float getRadius(int s) {
+	  return segWidth[s] / 2;
+  }
+}
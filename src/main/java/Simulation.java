@@ -1,36 +1,39 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.Random;
-
-import javax.media.opengl.GL2;
-import javax.media.opengl.glu.GLU;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 
 //class in which an environment for the tree to grow is created, and a list of trees is created to grow in the environment
 public class Simulation {
-	public static Vector3 SIZE; //size of the box in which the trees will grow in meters
-	public static Random randomGenerator = new Random();
 	ArrayList<Tree> trees = new ArrayList<Tree>(); //list of trees
+	RandomStream random; //all random numbers of the simulation come from this, split by tree
 	VoxelGrid voxels; //3d index of space
-	static Simulation simulation;
-	static TreeCanvas canvas; //graphics
-	static SimulationParams simParams; //environmental parameters and simulation parameters
-	static TreeParams treeParams; //parameters for individual trees
+	private ForkJoinPool treePool; //null if trees grow one after another
+	final SimulationParams simParams; //environmental parameters and simulation parameters
+	final TreeParams treeParams; //parameters for individual trees
+	private ArrayList<StatsSink> sinks = new ArrayList<StatsSink>(); //given the statistics of each year, nothing is worked out if empty
+	private int reportedYear = 0; //last year handed to the sinks
 	
-	static double random() {
-		return randomGenerator.nextDouble();
+	// Create a new simulation of general deciduous trees
+	Simulation(SimulationParams sParams) {
+		this(sParams, TreeParams.createGeneralDeciduousTreeParams());
+		//this(sParams, TreeParams.createAmericanSycamoreTreeParams());
+		//this(sParams, TreeParams.createSugarMapleTreeParams());
 	}
 
 	// Create a new simulation. Set the number of trees in the x and y directions to have equal spacings
-	Simulation(SimulationParams sParams) {
-		SIZE = simParams.size;
-		treeParams = TreeParams.createGeneralDeciduousTreeParams();
-		//treeParams = TreeParams.createAmericanSycamoreTreeParams();
-		//treeParams = TreeParams.createSugarMapleTreeParams();
+	// everything the simulation uses is its own or reached through it, so any number of simulations can run side by side
+	Simulation(SimulationParams sParams, TreeParams tParams) {
+		simParams = sParams;
+		treeParams = tParams;
 		voxels = new VoxelGrid(simParams);	
-		float incrementX = SIZE.x / simParams.numTreesX;
-		float incrementY = SIZE.y / simParams.numTreesY;
+		float incrementX = simParams.size.x / simParams.numTreesX;
+		float incrementY = simParams.size.y / simParams.numTreesY;
 		for (int i = 0; i < simParams.numTreesX; i++) {
 			for (int j = 0; j < simParams.numTreesY; j++) {
 				float xCoor = (i * incrementX) + (incrementX/2);
@@ -38,57 +41,229 @@ public class Simulation {
 				trees.add(new Tree(simParams, treeParams, voxels, xCoor, yCoor));
 			}
 		}
-		
+		reseed(simParams.seed);
+		startTreeThreads();
+	}
+
+	//a simulation carried on from a checkpoint written by writeCheckpoint. The plot and cells must be the ones it was
+	//written with, the other parameters can be changed, e.g. the wind or light for the years that are left
+	Simulation(File checkpoint, SimulationParams sParams, TreeParams tParams) throws IOException {
+		simParams = sParams;
+		treeParams = tParams;
+		Checkpoint in = Checkpoint.open(checkpoint);
+		try {
+			random = new RandomStream(in.getLong());
+			voxels = VoxelGrid.readCheckpoint(in, simParams);
+			int count = in.getInt();
+			for (int i = 0; i < count; i++) {
+				trees.add(new Tree(simParams, treeParams, voxels, in));
+			}
+		}
+		finally {
+			in.close();
+		}
+		startTreeThreads();
+	}
+
+	//writes everything the simulation needs to carry on to a file: the trees with all of their segments, the
+	//occupancy and light of the voxel grid, and the random numbers. Only between two years, after update
+	void writeCheckpoint(File checkpoint) throws IOException {
+		Checkpoint out = Checkpoint.create(checkpoint);
+		try {
+			out.putLong(random.seed);
+			voxels.writeCheckpoint(out);
+			out.putInt(trees.size());
+			for (Tree tree: trees) {
+				tree.writeCheckpoint(out);
+			}
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	//a copy of the simulation that carries on from the same year with its own parameters, e.g. another wind or light
+	//for the years that are left. The plot and cells must stay the same. The fork draws the same random numbers as
+	//this simulation unless it is reseeded. Light in the voxel grid is shared until one of them changes it, so many
+	//forks of a grown stand take little more memory than the stand. Only between two years, after update
+	Simulation fork(SimulationParams sParams, TreeParams tParams) {
+		if (sParams.voxelFile != null && sParams.voxelFile.equals(simParams.voxelFile))
+			throw new IllegalArgumentException("a fork needs a voxel file of its own");
+		return new Simulation(this, sParams, tParams);
+	}
+
+	private Simulation(Simulation parent, SimulationParams sParams, TreeParams tParams) {
+		simParams = sParams;
+		treeParams = tParams;
+		random = parent.random;
+		voxels = parent.voxels.fork(simParams);
+		for (Tree tree: parent.trees) {
+			trees.add(tree.fork(simParams, treeParams, voxels));
+		}
+		startTreeThreads();
+	}
+
+	//makes the trees grow at the same time if the parameters ask for it
+	private void startTreeThreads() {
+		if (simParams.treeThreads > 0) {
+			treePool = new ForkJoinPool(simParams.treeThreads);
+			for (Tree tree: trees) {
+				tree.growAlongsideOthers();
+			}
+		}
+	}
+
+	//starts the random numbers of the simulation and its trees again from the given seed
+	void reseed(long seed) {
+		random = new RandomStream(seed);
+		for (int i = 0; i < trees.size(); i++) {
+			trees.get(i).random = random.split(i);
+		}
 	}
 
 	//updates all trees in the simulation and the light
 	void update() {
-		for (Tree tree: trees) {
-			tree.update();
+		if (treePool == null) {
+			for (Tree tree: trees) {
+				tree.update();
+			}
+		}
+		else {
+			treePool.invoke(new TreeTask(0, trees.size(), false));
+			for (Tree tree: trees) {
+				tree.commitClaims();
+			}
+			treePool.invoke(new TreeTask(0, trees.size(), true));
 		}
 		if (trees.get(0).age <= treeParams.maxAge()) {
 			voxels.updateLight();
 		}
+		if (!sinks.isEmpty()) {
+			report();
+		}
+	}
+
+	//hands the statistics of every tree and the whole stand to a sink at the end of each year from now on
+	void addStatsSink(StatsSink sink) {
+		sinks.add(sink);
+	}
+
+	//hands the statistics of the year that was just grown to the sinks, once a year
+	private void report() {
+		int year = trees.get(0).age;
+		if (year == reportedYear) {
+			return;
+		}
+		reportedYear = year;
+		StandStats stand = new StandStats();
+		stand.seed = random.seed;
+		stand.year = year;
+		stand.trees = trees.size();
+		for (int i = 0; i < trees.size(); i++) {
+			TreeStats stats = trees.get(i).stats();
+			stats.seed = random.seed;
+			stats.year = year;
+			stats.tree = i;
+			for (StatsSink sink: sinks) {
+				sink.tree(stats);
+			}
+			stand.totalMass += stats.totalMass;
+			stand.stemMass += stats.stemMass;
+			stand.leafMass += stats.leafMass;
+			stand.timberMass += stats.timberMass;
+			stand.meanHeight += stats.height / trees.size();
+			stand.maxHeight = Math.max(stand.maxHeight, stats.height);
+			stand.basalArea += (float)(Math.PI * stats.diameter * stats.diameter / 4);
+			stand.segments += stats.segments;
+			stand.leaves += stats.leaves;
+		}
+		for (StatsSink sink: sinks) {
+			sink.stand(stand);
+		}
 	}
 	
+	//grows or finishes the year of part of the list of trees, splitting it in half until the pieces are single trees
+	private class TreeTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		final int from, to;
+		final boolean finish;
+
+		TreeTask(int from, int to, boolean finish) {
+			this.from = from;
+			this.to = to;
+			this.finish = finish;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from == 1) {
+				if (finish)
+					trees.get(from).finishYear();
+				else
+					trees.get(from).grow();
+			}
+			else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new TreeTask(from, middle, finish), new TreeTask(middle, to, finish));
+			}
+		}
+	}
+
 	//grows one tree and continues rotating
-	static void growOnceAndRotate() {
+	void growOnceAndRotate() {
 		while (true) {
-        	simulation.update();
+        	update();
         }
 	}
 	
 	// Grows a single tree, but always the same one.
-	static void growSameTree() {
-		randomGenerator = new Random(13);
+	void growSameTree() {
+		reseed(13);
 		while (true) {
-        	simulation.update();
+        	update();
         }
 	}
 	
 	//grows a single tree and then stops simulation
-	static void growOnceAndStop() {
+	void growOnceAndStop() {
 		for (int i = 0; i < treeParams.maxAge() + 20; i++) {
-			simulation.update();
+			update();
 		}		
+		close();
+	}
+
+	//ends the simulation: the threads of the trees and the voxel grid are stopped and a grid kept in a file is written
+	//to disk and closed. The trees and light can still be looked at, written to a checkpoint or forked, but the
+	//simulation cannot grow any more. Closing twice does nothing
+	void close() {
+		if (treePool != null) {
+			treePool.shutdown();
+			treePool = null;
+		}
+		try {
+			voxels.close();
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
 	}
 	
 	//grows trees repeatedly
-	static void growOverAndOver() {
+	static void growOverAndOver(SimulationView view) {
 		while (true) {
-			simParams = SimulationParams.createSimulationParamsEquator();
-			simulation = new Simulation(simParams);
-			canvas.setSimulation(simulation);
+			SimulationParams simParams = SimulationParams.createSimulationParamsEquator();
+			Simulation simulation = new Simulation(simParams);
+			view.setSimulation(simulation);
         	simulation.growOnceAndStop();
         }
 	}
 	
 
 	//runs a demo mode; repeatedly grows trees in changing conditions
-	 static void demo() { 
+	 static void demo(SimulationView view) { 
 		while (true) {
 			for(int i = 0; i < 5; i++) {
-				simParams = SimulationParams.createSimulationParamsEquator();
+				SimulationParams simParams = SimulationParams.createSimulationParamsEquator();
 				if (i == 0) {
 					simParams.cameraDistance = 1;
 					simParams.roundLeaves = true;
@@ -114,8 +289,8 @@ public class Simulation {
 					simParams.roundLeaves = false;
 					simParams.cameraDistance = 2;
 				}
-				simulation = new Simulation(simParams);
-				canvas.setSimulation(simulation);
+				Simulation simulation = new Simulation(simParams);
+				view.setSimulation(simulation);
 				simulation.growOnceAndStop();
 			}
 			
@@ -123,63 +298,107 @@ public class Simulation {
 	}
 	 
 	 //runs an experiment that grows trees at 15 different spacings, repeats 10 times, and records the total mass of all the trees
-	 static void experimentMaximizeCarbonUptake() { 
-		 for (int j = 0; j < 10; j++) {
-			 for(int i = 1; i <= 15; i++) {
-				 simParams = SimulationParams.createSimulationParamsEquator();
-				 simParams.cameraDistance = 2;
-				 simParams.numTreesX = i;
-				 simParams.numTreesY = i;
-				 simulation = new Simulation(simParams);
-				 canvas.setSimulation(simulation);
-				 simulation.growOnceAndStop();
-				 float totalUptake = 0;
-				 for (Tree tree: simulation.trees) {
-					 totalUptake += tree.totalMass();
-				 }
-				 System.out.println(i + " " + totalUptake);
-			 }
-		 }
+	 static void experimentMaximizeCarbonUptake(SimulationView view) { 
+		 printSpacingSweep(view, TOTAL_MASS);
 	 }
 	 
 	 //runs and experiment that grows trees at 15 different spacings, repeats 10 times, and records total mass of usable timber (diameter > 13 cm)
-	 static void experimentMaximizeTimberProduction() { 
-		 for (int j = 0; j < 10; j++) {
-			 for(int i = 1; i <= 15; i++) {
-				 simParams = SimulationParams.createSimulationParamsEquator();
-				 simParams.cameraDistance = 2;
-				 simParams.numTreesX = i;
-				 simParams.numTreesY = i;
-				 simulation = new Simulation(simParams);
-				 canvas.setSimulation(simulation);
-				 simulation.growOnceAndStop();
-				 float totalTimberMass = 0;
-				 for (Tree tree: simulation.trees) {
-					 totalTimberMass += tree.timberMass();
-				 }
-				 System.out.println(i + " " + totalTimberMass);
+	 static void experimentMaximizeTimberProduction(SimulationView view) { 
+		 printSpacingSweep(view, TIMBER_MASS);
+	 }
+
+	 //total mass of all the trees
+	 static final SweepScheduler.Measure TOTAL_MASS = new SweepScheduler.Measure() {
+		 public float of(Simulation simulation) {
+			 float totalUptake = 0;
+			 for (Tree tree: simulation.trees) {
+				 totalUptake += tree.totalMass();
+			 }
+			 return totalUptake;
+		 }
+	 };
+
+	 //total mass of usable timber of all the trees
+	 static final SweepScheduler.Measure TIMBER_MASS = new SweepScheduler.Measure() {
+		 public float of(Simulation simulation) {
+			 float totalTimberMass = 0;
+			 for (Tree tree: simulation.trees) {
+				 totalTimberMass += tree.timberMass();
 			 }
+			 return totalTimberMass;
 		 }
+	 };
+
+	 //like experimentMaximizeCarbonUptake, but each spacing is repeated until the mean total mass is known to within 5%
+	 static void experimentMaximizeCarbonUptakeAdaptive(SimulationView view) {
+		 printAdaptiveSpacingSweep(view, TOTAL_MASS);
 	 }
-	
-	
+
+	 //like experimentMaximizeTimberProduction, but each spacing is repeated until the mean timber mass is known to within 5%
+	 static void experimentMaximizeTimberProductionAdaptive(SimulationView view) {
+		 printAdaptiveSpacingSweep(view, TIMBER_MASS);
+	 }
+
+	 //grows 1x1 to 15x15 trees, each spacing as many times as it takes for the 95% confidence interval of the measure
+	 //to be within 5% of its mean (at least 3, at most 30 times). Prints the number of trees along a side, the mean,
+	 //the half width of the interval and the number of runs of each spacing, then the number of runs in all
+	 static void printAdaptiveSpacingSweep(SimulationView view, SweepScheduler.Measure measure) {
+		 ArrayList<SimulationParams> configs = new ArrayList<SimulationParams>();
+		 for(int i = 1; i <= 15; i++) {
+			 SimulationParams simParams = SimulationParams.createSimulationParamsEquator();
+			 simParams.cameraDistance = 2;
+			 simParams.numTreesX = i;
+			 simParams.numTreesY = i;
+			 configs.add(simParams);
+		 }
+		 AdaptiveReplicates replicates = new AdaptiveReplicates();
+		 replicates.seed = System.nanoTime();
+		 Welford[] results = replicates.run(configs, measure, view);
+		 for (int c = 0; c < results.length; c++) {
+			 System.out.println(configs.get(c).numTreesX + " " + results[c].mean + " " + results[c].halfWidth95() + " " + results[c].count);
+		 }
+		 System.out.println("runs: " + replicates.grown);
+	 }
+	 
+	 //grows 1x1 to 15x15 trees 10 times over, all runs at the same time on the processors, and prints the number of trees
+	 //along a side and the measure of each run in that order. Each repeat has its own seed, counted up from one seed
+	 static void printSpacingSweep(SimulationView view, SweepScheduler.Measure measure) {
+		 Sweep sweep = new Sweep().axis("numTreesX numTreesY", 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15)
+				 .axis("cameraDistance", 2).replicates(10).seed(System.nanoTime());
+		 ArrayList<Sweep.Job> jobs = sweep.jobs();
+		 float[] results;
+		 try {
+			 results = sweep.run(measure, view);
+		 }
+		 catch (IOException e) { //only with a results file
+			 throw new RuntimeException(e);
+		 }
+		 for (int r = 0; r < results.length; r++) {
+			 System.out.println(jobs.get(r).simParams.numTreesX + " " + results[r]);
+		 }
+	 }
+	 
 	//will only work if there is one tree in simulation, prints the center of mass of the tree after 60 years of growth
-	static void experiment30TreesPrintCOM() {
-		simParams = SimulationParams.createSimulationParamsEquator();
+	static void experiment30TreesPrintCOM(SimulationView view) {
+		SimulationParams simParams = SimulationParams.createSimulationParamsEquator();
+		long seed = simParams.seed;
 		for(int i = 0; i < 30; i++) {
-			simulation = new Simulation(simParams);
-			canvas.setSimulation(simulation);
+			simParams.seed = seed + i; //a different tree each time
+			Simulation simulation = new Simulation(simParams);
+			view.setSimulation(simulation);
         	simulation.growOnceAndStop();
         	simulation.trees.get(0).printCOM();
         }
 	}
 	
 	//will only work if there is one tree in simulation, prints the height/diameter relationship of 30 trees after 60 years of growth
-	static void experiment30TreesPrintHeightDiameterRelationship() {
-		simParams = SimulationParams.createSimulationParamsEquator();
+	static void experiment30TreesPrintHeightDiameterRelationship(SimulationView view) {
+		SimulationParams simParams = SimulationParams.createSimulationParamsEquator();
+		long seed = simParams.seed;
 		for(int i = 0; i < 30; i++) {
-			simulation = new Simulation(simParams);
-			canvas.setSimulation(simulation);
+			simParams.seed = seed + i; //a different tree each time
+			Simulation simulation = new Simulation(simParams);
+			view.setSimulation(simulation);
         	simulation.growOnceAndStop();
         	simulation.trees.get(0).printHeightDiameterRelationship();
         }
@@ -187,11 +406,13 @@ public class Simulation {
 	
 	//will only work if there is one tree in simulation
 	//prints the constant of proportionality between final mass of leaves and total mass
-	static void experiment30TreesPrintMlMsRelationship() {
-		simParams = SimulationParams.createSimulationParamsEquator();
+	static void experiment30TreesPrintMlMsRelationship(SimulationView view) {
+		SimulationParams simParams = SimulationParams.createSimulationParamsEquator();
+		long seed = simParams.seed;
 		for(int i = 0; i < 30; i++) {
-			simulation = new Simulation(simParams);
-			canvas.setSimulation(simulation);
+			simParams.seed = seed + i; //a different tree each time
+			Simulation simulation = new Simulation(simParams);
+			view.setSimulation(simulation);
         	simulation.growOnceAndStop();
         	simulation.trees.get(0).printMlMsRelationship();
         }
@@ -199,38 +420,15 @@ public class Simulation {
 	
 	//will only work if there is one tree in simulation, prints the relationship between total mass
 	//and mass of leaves for 30 trees after 60 years of growth
-	static void experiment30TreesPrintMtMlRelationship() {
-		simParams = SimulationParams.createSimulationParamsEquator();
+	static void experiment30TreesPrintMtMlRelationship(SimulationView view) {
+		SimulationParams simParams = SimulationParams.createSimulationParamsEquator();
+		long seed = simParams.seed;
 		for(int i = 0; i < 30; i++) {
-			simulation = new Simulation(simParams);
-			canvas.setSimulation(simulation);
+			simParams.seed = seed + i; //a different tree each time
+			Simulation simulation = new Simulation(simParams);
+			view.setSimulation(simulation);
         	simulation.growOnceAndStop();
         	simulation.trees.get(0).printMtMlRelationship();
         }
 	}
-	
-	//draws the entire simulation
-	void draw(GL2 gl, GLU glu) {
-		for (Tree tree : trees) {
-			tree.draw(gl, glu);
-		}
-		voxels.drawShadow(gl, glu);
-	}
-	
-	//main function
-    public final static void main(String[] args) { 
-		simParams = SimulationParams.createSimulationParamsEquator();
-		simulation = new Simulation(simParams);
-		canvas = TreeCanvas.createCanvas(simulation);
-    	//growOnceAndRotate();
-    	//growOverAndOver();
-		//growSameTree();
-		//experimentMaximizeTimberProduction();
-		demo();
-		//experimentMaximizeCarbonUptake();
-		//experiment30TreesPrintCOM();
-		//experiment30TreesPrintMlMsRelationship();
-		//experiment30TreesPrintHeightDiameterRelationship();
-		//experiment30TreesPrintMtMlRelationship();
-    }
 }
@@ -1,21 +1,35 @@
 //stores parameters for a simulation, including environmental factors and graphics preferences
 public class SimulationParams {
 	
-	public static float maxWindSpeed; //m/s
-	public static float gravity; //m/s^2
-	public static float totalSunlightIncident; //on a cubic meter in one year, in MJ
-	public static float airDensity; //kg/m3
-	public static float[] startLightDirections = {0.6f, 0.1f, 0.1f, 0.1f, 0.1f}; //proportion of light coming from each direction (DNSEW)
-	public static int cameraDistance;
+	public float maxWindSpeed; //m/s
+	public float gravity; //m/s^2
+	public float totalSunlightIncident; //on a cubic meter in one year, in MJ
+	public float airDensity; //kg/m3
+	public float[] startLightDirections = {0.6f, 0.1f, 0.1f, 0.1f, 0.1f}; //proportion of light coming from each direction (DNSEW)
+	public int cameraDistance;
 	//1: close up (for single deciduous trees)
 	//2: middle range (for forests of normal deciduous trees)
 	//3: far away (for very large trees, ex. American Sycamore)
-	public static boolean roundLeaves; //true if round, false if pretty
-	public static int numTreesX; //number of trees in x direction
-	public static int numTreesY; //number of trees in y direction
-	public static float timberDiameter; //minimum diameter of wood to use for timber
+	public boolean roundLeaves; //true if round, false if pretty
+	public int numTreesX; //number of trees in x direction
+	public int numTreesY; //number of trees in y direction
+	public float timberDiameter; //minimum diameter of wood to use for timber
 	public Vector3 size; //size of simulation
 	public float vGridCellSize; //size of cells in voxel grid
+	public int lightThreads; //number of threads that propagate light through the voxel grid (1 = no extra threads)
+	public int lightUpdate;
+	//1: recompute the light in the whole voxel grid every year
+	//2: only recompute the light below cells that were filled or emptied, faster once the canopy changes little from year to year
+	//3: count the occupied cells along each path of light and work the light out from the counts when it is asked for,
+	//   only the paths through cells that were filled or emptied are updated. Directional light only, otherwise falls back to 1
+	public boolean vectorLight; //propagate directional light several cells at a time, needs the kernel in src/vector and jdk.incubator.vector
+	public String voxelFile; //file the voxel grid is memory mapped from for plots too large for the heap, null to keep it on the heap
+	public long seed; //seed of all random numbers in the simulation
+	public int treeThreads;
+	//0: trees grow one after another, each one sees the cells filled by the trees before it
+	//1 or more: trees grow at the same time on this many threads against the cells filled at the start of the year, then
+	//   claim the cells of their new segments in tree order, a cell claimed twice goes to the first tree. The trees
+	//   grown are the same for any number of threads
 
 	private SimulationParams () {
 		
@@ -25,6 +39,8 @@ public class SimulationParams {
 		SimulationParams s = new SimulationParams();
 		s.size = new Vector3(10,10,7);
 		s.vGridCellSize = .08f;
+		s.lightThreads = 1;
+		s.lightUpdate = VoxelGrid.FULL_LIGHT_UPDATE;
 		s.maxWindSpeed = 20.0f; 
 		s.gravity = 9.8f; 
 		s.totalSunlightIncident = 6636f; 
@@ -36,6 +52,31 @@ public class SimulationParams {
 		float[] light = {0.6f, 0.1f, 0.1f, 0.1f, 0.1f}; 
 		s.startLightDirections = light;
 		s.timberDiameter = .13f;
+		s.seed = System.nanoTime();
+		return s;
+	}
+
+	//a copy that can be changed without changing these parameters, e.g. for another replicate
+	public SimulationParams copy() {
+		SimulationParams s = new SimulationParams();
+		s.maxWindSpeed = maxWindSpeed;
+		s.gravity = gravity;
+		s.totalSunlightIncident = totalSunlightIncident;
+		s.airDensity = airDensity;
+		s.startLightDirections = startLightDirections.clone();
+		s.cameraDistance = cameraDistance;
+		s.roundLeaves = roundLeaves;
+		s.numTreesX = numTreesX;
+		s.numTreesY = numTreesY;
+		s.timberDiameter = timberDiameter;
+		s.size = new Vector3(size.x, size.y, size.z);
+		s.vGridCellSize = vGridCellSize;
+		s.lightThreads = lightThreads;
+		s.lightUpdate = lightUpdate;
+		s.vectorLight = vectorLight;
+		s.voxelFile = voxelFile;
+		s.seed = seed;
+		s.treeThreads = treeThreads;
 		return s;
 	}
 
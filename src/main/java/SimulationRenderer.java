@@ -0,0 +1,141 @@
+import javax.media.opengl.GL;
+import javax.media.opengl.GL2;
+import javax.media.opengl.glu.GLU;
+
+//draws a simulation with OpenGL. Kept apart from the model so that the model runs without the graphics libraries,
+//see HeadlessSimulation
+public class SimulationRenderer {
+  private float[] rotateToSegment = new float[16]; //matrix for graphics, worked out for each segment as it is drawn
+
+  //draws the entire simulation
+  void draw(GL2 gl, GLU glu, Simulation simulation) {
+	  for (Tree tree : simulation.trees) {
+		  drawSegments(gl, glu, tree.segments, SegmentStore.ROOT);
+	  }
+	  drawShadow(gl, glu, simulation.voxels);
+  }
+
+  //fills rotateToSegment for a segment: rotates the coordinate system so that Z is in the direction of the segment
+  private void computeRotation(SegmentStore segments, int s) {
+    Vector3 z = segments.direction(s);
+    z.normalize();
+    Vector3 x = z.onePerpendicular();
+    x.normalize();
+    Vector3 y = z.crossedWith(x);
+    float[] m = rotateToSegment;
+    m[0] = x.x; m[1] = x.y; m[2] = x.z; m[3] = 0;
+    m[4] = y.x; m[5] = y.y; m[6] = y.z; m[7] = 0;
+    m[8] = z.x; m[9] = z.y; m[10] = z.z; m[11] = 0;
+    m[12] = (segments.startX(s) + segments.sParams.size.x) % segments.sParams.size.x;
+    m[13] = (segments.startY(s) + segments.sParams.size.y) % segments.sParams.size.y;
+    m[14] = segments.startZ(s);
+    m[15] = 1f;
+  }
+
+  //draws a single segment, either a leaf or cylindrical wood beam
+  	void drawSegment(GL2 gl, GLU glu, SegmentStore segments, int s) {
+  		gl.glPushMatrix();
+  		if (segments.isLeaf(s)) {
+  	        // Draw leaves. Set material properties.
+  			if (segments.sParams.roundLeaves) {
+  				float[] rgba = {0f, 0.3f, 0f};
+  				gl.glMaterialfv(GL.GL_FRONT, GL2.GL_AMBIENT, rgba, 0);
+  				gl.glMaterialfv(GL.GL_FRONT, GL2.GL_SPECULAR, rgba, 0);
+  				// Draw the sphere at the right place.
+  				gl.glTranslatef((segments.startX(s) + segments.sParams.size.x) % segments.sParams.size.x,
+  						(segments.startY(s) + segments.sParams.size.y) % segments.sParams.size.y, segments.startZ(s));
+  				TreeCanvas.drawSphere(glu, .025f);
+  			}
+  			else {
+  				float[] rgba = {1f, 1f, 1f, 1f};
+  	  	        gl.glMaterialfv(GL.GL_FRONT, GL2.GL_AMBIENT, rgba, 0);
+  	  	        gl.glMaterialfv(GL.GL_FRONT, GL2.GL_SPECULAR, rgba, 0);
+  	  	        computeRotation(segments, s);
+  	  	        gl.glMultMatrixf(rotateToSegment, 0);
+
+  	  	        TreeCanvas.leafTexture.enable(gl);
+  	  	        TreeCanvas.leafTexture.bind(gl);
+
+  	  	        gl.glBegin(GL2.GL_QUADS);
+
+  	  	        gl.glTexCoord2f(0f, 0f);
+  	  	        gl.glVertex3f(-0.05f, 0f, 0f);
+  	  	        gl.glTexCoord2f(1f, 0f);
+	  	        gl.glVertex3f(0.05f, 0f, 0f);
+	  	        gl.glTexCoord2f(1f, 1f);
+	  	        gl.glVertex3f(0.05f, 0f, 0.15f);
+	  	        gl.glTexCoord2f(0f, 1f);
+	  	        gl.glVertex3f(-0.05f, 0f, 0.15f);
+
+	  	        gl.glTexCoord2f(0f, 0f);
+	  	        gl.glVertex3f(0f, -0.05f, 0f);
+	  	        gl.glTexCoord2f(1f, 0f);
+	  	        gl.glVertex3f(0f, 0.05f, 0f);
+	  	        gl.glTexCoord2f(1f, 1f);
+	  	        gl.glVertex3f(0f, 0.05f, 0.15f);
+	  	        gl.glTexCoord2f(0f, 1f);
+	  	        gl.glVertex3f(0f, -0.05f, 0.15f);
+
+	  	        gl.glTexCoord2f(0f, 0f);
+	  	        gl.glVertex3f(-0.05f, 0f, 0.02f);
+	  	        gl.glTexCoord2f(1f, 0f);
+	  	        gl.glVertex3f(0.05f, 0f, -0.02f);
+	  	        gl.glTexCoord2f(1f, 1f);
+	  	        gl.glVertex3f(0.05f, 0.15f, -0.02f);
+	  	        gl.glTexCoord2f(0f, 1f);
+	  	        gl.glVertex3f(-0.05f, 0.15f, 0.02f);
+
+	  	        gl.glTexCoord2f(0f, 0f);
+	  	        gl.glVertex3f(-0.05f, 0f, -0.02f);
+	  	        gl.glTexCoord2f(1f, 0f);
+	  	        gl.glVertex3f(0.05f, 0f, 0.02f);
+	  	        gl.glTexCoord2f(1f, 1f);
+	  	        gl.glVertex3f(0.05f, -0.15f, 0.02f);
+	  	        gl.glTexCoord2f(0f, 1f);
+	  	        gl.glVertex3f(-0.05f, -0.15f, -0.02f);
+
+  	  	        gl.glEnd();
+
+  	  	        TreeCanvas.leafTexture.disable(gl);
+  			}
+      	} else {
+      		//Draw wood.
+  	        float[] rgba = {0.3f, 0.2f, 0.075f};
+  	        gl.glMaterialfv(GL.GL_FRONT, GL2.GL_AMBIENT, rgba, 0);
+  	        gl.glMaterialfv(GL.GL_FRONT, GL2.GL_SPECULAR, rgba, 0);
+  	        computeRotation(segments, s);
+  	        gl.glMultMatrixf(rotateToSegment, 0);
+  	        TreeCanvas.drawCylinder(glu, segments.getLength(), segments.getRadius(s));
+      	}
+  		gl.glPopMatrix();
+  	}
+
+  //draws a segment and all of its descendants
+  void drawSegments(GL2 gl, GLU glu, SegmentStore segments, int top) {
+	  for (int s = top; s != SegmentStore.NONE; s = segments.nextInPreOrder(s, top))
+		  drawSegment(gl, glu, segments, s);
+  }
+
+  //draw the shadow of the tree on the ground based on the amount of light left at the ground
+  void drawShadow(GL2 gl, GLU glu, VoxelGrid voxels) {
+	  gl.glDisable(GL2.GL_LIGHTING);
+	  for (int i = 0; i < voxels.nx; i++)
+	  {
+		  for (int j = 0; j < voxels.ny; j++)
+		  {
+			  gl.glPushMatrix();
+			  float lightHere = (float)voxels.getLight(voxels.index(i, j, 0));
+			  gl.glColor3f(lightHere, lightHere, lightHere);
+			  Vector3 corner = voxels.cellToPoint(new Vector3(i, j, 0));
+			  gl.glTranslatef(corner.x, corner.y, corner.z);
+			  gl.glBegin(GL2.GL_QUADS);
+			  gl.glVertex3f(0f, 0f, 0f);
+			  gl.glVertex3f(0f, voxels.CELL_SIZE, 0f);
+			  gl.glVertex3f(voxels.CELL_SIZE, voxels.CELL_SIZE, 0f);
+			  gl.glVertex3f(voxels.CELL_SIZE, 0f, 0f);
+			  gl.glEnd();
+			  gl.glPopMatrix();
+		  }
+	  }
+  }
+}
@@ -0,0 +1,10 @@
+//something that shows the simulation being run, told each time an experiment starts a new simulation
+public interface SimulationView {
+	void setSimulation(Simulation s);
+
+	//shows nothing, for running without a display
+	SimulationView NONE = new SimulationView() {
+		public void setSimulation(Simulation s) {
+		}
+	};
+}
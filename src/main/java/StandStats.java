@@ -0,0 +1,35 @@
+//statistics of all the trees of a simulation together at the end of a year
+public class StandStats extends YearStats {
+	static final String[] COLUMNS = {"year", "trees", "totalMass", "stemMass", "leafMass", "timberMass",
+			"meanHeight", "maxHeight", "basalArea", "segments", "leaves"};
+
+	int trees;
+	float totalMass, stemMass, leafMass, timberMass; //kg, summed over the trees
+	float meanHeight, maxHeight; //m
+	float basalArea; //m^2, cross sections of the root segments
+	int segments, leaves;
+
+	String[] columns() {
+		return COLUMNS;
+	}
+
+	void values(float[] into) {
+		into[0] = year;
+		into[1] = trees;
+		into[2] = totalMass;
+		into[3] = stemMass;
+		into[4] = leafMass;
+		into[5] = timberMass;
+		into[6] = meanHeight;
+		into[7] = maxHeight;
+		into[8] = basalArea;
+		into[9] = segments;
+		into[10] = leaves;
+	}
+
+	void appendCsv(StringBuilder line) {
+		line.append(year).append(',').append(trees).append(',').append(totalMass).append(',').append(stemMass)
+			.append(',').append(leafMass).append(',').append(timberMass).append(',').append(meanHeight).append(',')
+			.append(maxHeight).append(',').append(basalArea).append(',').append(segments).append(',').append(leaves);
+	}
+}
@@ -0,0 +1,13 @@
+import java.io.IOException;
+
+//receives the statistics of every tree and of the whole stand of a simulation at the end of each year it grows, see
+//Simulation.addStatsSink. A sink can be shared by simulations running at the same time, so implementations are
+//thread safe. Records are not kept by the simulation and can be held on to
+public interface StatsSink {
+	void tree(TreeStats stats);
+
+	void stand(StandStats stats);
+
+	//writes out anything still buffered and closes any file
+	void close() throws IOException;
+}
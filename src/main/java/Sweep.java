@@ -0,0 +1,236 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+//a set of simulations declared by the values each parameter takes, instead of a method that builds them by hand:
+//
+//  new Sweep().axis("numTreesX numTreesY", 1, 2, 3).axis("maxWindSpeed", 10f, 20f).species("SugarMaple")
+//      .replicates(10).resultsFile(new File("wind.txt")).run(measure, view);
+//
+//An axis names one or more public fields of SimulationParams, or parameters of TreeParams by the name of their field,
+//that are all set to each of its values in turn. Tree parameters are set on a copy made by TreeParams.with. The
+//parameters in NOT_AXES are refused.
+//Every combination of the axes, species and replicates is one job. Jobs are grown on a SweepScheduler, and with a
+//results file each job that finishes is written to it as a line of its key and result, so a sweep that is run again
+//only grows the jobs that are not in the file yet
+public class Sweep {
+	private final ArrayList<String[]> axisFields = new ArrayList<String[]>();
+	private final ArrayList<Object[]> axisValues = new ArrayList<Object[]>();
+	private String[] species = {"GeneralDeciduous"}; //names of TreeParams.create...TreeParams factories
+	private int replicates = 1;
+	private long seed = 0; //replicate r of every combination is grown from seed + r
+	private File resultsFile; //null to grow every job
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	//parameters that cannot be axes because they do not change what is grown, so their jobs would only repeat each
+	//other: the seed comes from seed and replicates, the next ones only change how a run is drawn, where its grid is
+	//kept or how many threads it uses, and segments always have the density of oak whatever woodDensity says
+	static final List<String> NOT_AXES = Arrays.asList("seed", "cameraDistance", "roundLeaves", "voxelFile",
+			"lightThreads", "treeThreads", "vectorLight", "woodDensity");
+
+	//one simulation of the sweep
+	static class Job {
+		final String key; //the values of the axes, species, seed and replicate, one line of text
+		final SimulationParams simParams;
+		final TreeParams treeParams;
+
+		Job(String key, SimulationParams simParams, TreeParams treeParams) {
+			this.key = key;
+			this.simParams = simParams;
+			this.treeParams = treeParams;
+		}
+	}
+
+	//adds an axis: the fields, separated by spaces, are set together to each of the values
+	Sweep axis(String fields, Object... values) {
+		String[] names = fields.trim().split("\\s+");
+		for (String name: names) {
+			if (NOT_AXES.contains(name))
+				throw new IllegalArgumentException(name + " cannot be an axis, see Sweep.NOT_AXES");
+		}
+		axisFields.add(names);
+		axisValues.add(values);
+		return this;
+	}
+
+	//the species grown, by the name in their TreeParams factory, e.g. "AmericanSycamore"
+	Sweep species(String... names) {
+		species = names;
+		return this;
+	}
+
+	Sweep replicates(int count) {
+		replicates = count;
+		return this;
+	}
+
+	Sweep seed(long seed) {
+		this.seed = seed;
+		return this;
+	}
+
+	Sweep resultsFile(File file) {
+		resultsFile = file;
+		return this;
+	}
+
+	Sweep threads(int count) {
+		threads = count;
+		return this;
+	}
+
+	//every job of the sweep. Replicates vary slowest, then species, then the axes in the order they were added
+	ArrayList<Job> jobs() {
+		ArrayList<Job> jobs = new ArrayList<Job>();
+		int[] at = new int[axisFields.size()];
+		for (int r = 0; r < replicates; r++) {
+			for (String name: species) {
+				Arrays.fill(at, 0);
+				do {
+					SimulationParams simParams = SimulationParams.createSimulationParamsEquator();
+					TreeParams treeParams = createTreeParams(name);
+					StringBuilder key = new StringBuilder("species=" + name);
+					for (int a = 0; a < at.length; a++) {
+						Object value = axisValues.get(a)[at[a]];
+						for (String field: axisFields.get(a)) {
+							treeParams = set(simParams, treeParams, field, value);
+							key.append(' ').append(field).append('=').append(text(value));
+						}
+					}
+					simParams.seed = seed + r;
+					key.append(" seed=").append(simParams.seed).append(" replicate=").append(r);
+					jobs.add(new Job(key.toString(), simParams, treeParams));
+				} while (next(at));
+			}
+		}
+		return jobs;
+	}
+
+	//moves the axis counters on to the next combination, false after the last one
+	private boolean next(int[] at) {
+		for (int a = at.length - 1; a >= 0; a--) {
+			if (++at[a] < axisValues.get(a).length)
+				return true;
+			at[a] = 0;
+		}
+		return false;
+	}
+
+	//grows the jobs that are not in the results file yet and returns the result of every job, in the order of jobs()
+	float[] run(SweepScheduler.Measure measure, SimulationView view) throws IOException {
+		ArrayList<Job> jobs = jobs();
+		HashMap<String, Float> done = readResults();
+		ArrayList<SimulationParams> runs = new ArrayList<SimulationParams>();
+		ArrayList<TreeParams> runTrees = new ArrayList<TreeParams>();
+		final ArrayList<String> keys = new ArrayList<String>(); //key of each run
+		for (Job job: jobs) {
+			if (!done.containsKey(job.key)) {
+				runs.add(job.simParams);
+				runTrees.add(job.treeParams);
+				keys.add(job.key);
+			}
+		}
+		final PrintWriter out = resultsFile == null ? null : new PrintWriter(new FileWriter(resultsFile, true));
+		try {
+			SweepScheduler scheduler = new SweepScheduler(threads);
+			if (out != null) {
+				scheduler.listener = new SweepScheduler.Listener() {
+					public void finished(int run, float result) {
+						synchronized (out) {
+							out.println(keys.get(run) + "\t" + result);
+							out.flush();
+						}
+					}
+				};
+			}
+			float[] grown = scheduler.run(runs, runTrees, measure, view);
+			for (int i = 0; i < grown.length; i++) {
+				done.put(keys.get(i), grown[i]);
+			}
+		}
+		finally {
+			if (out != null)
+				out.close();
+		}
+		float[] results = new float[jobs.size()];
+		for (int i = 0; i < results.length; i++) {
+			results[i] = done.get(jobs.get(i).key);
+		}
+		return results;
+	}
+
+	//the results already in the results file by key
+	private HashMap<String, Float> readResults() throws IOException {
+		HashMap<String, Float> done = new HashMap<String, Float>();
+		if (resultsFile == null || !resultsFile.exists())
+			return done;
+		BufferedReader in = new BufferedReader(new FileReader(resultsFile));
+		try {
+			for (String line = in.readLine(); line != null; line = in.readLine()) {
+				int tab = line.lastIndexOf('\t');
+				if (tab > 0)
+					done.put(line.substring(0, tab), Float.parseFloat(line.substring(tab + 1)));
+			}
+		}
+		finally {
+			in.close();
+		}
+		return done;
+	}
+
+	//new parameters of a species from its factory in TreeParams
+	static TreeParams createTreeParams(String species) {
+		try {
+			return (TreeParams)TreeParams.class.getMethod("create" + species + "TreeParams").invoke(null);
+		}
+		catch (ReflectiveOperationException e) {
+			throw new IllegalArgumentException("no species " + species, e);
+		}
+	}
+
+	//sets a field of the simulation parameters, or a tree parameter if the simulation parameters have no such field.
+	//Returns the tree parameters to use from then on, a changed copy if a tree parameter was set
+	static TreeParams set(SimulationParams simParams, TreeParams treeParams, String name, Object value) {
+		Field field;
+		try {
+			field = SimulationParams.class.getField(name);
+		}
+		catch (NoSuchFieldException e) {
+			if (!(value instanceof Number))
+				throw new IllegalArgumentException("cannot set " + name + " to " + text(value));
+			return treeParams.with(name, ((Number)value).floatValue());
+		}
+		try {
+			Class<?> type = field.getType();
+			if (type == float.class)
+				field.setFloat(simParams, ((Number)value).floatValue());
+			else if (type == int.class)
+				field.setInt(simParams, ((Number)value).intValue());
+			else if (type == long.class)
+				field.setLong(simParams, ((Number)value).longValue());
+			else if (type == float[].class)
+				field.set(simParams, ((float[])value).clone());
+			else
+				field.set(simParams, value);
+		}
+		catch (IllegalAccessException | ClassCastException e) {
+			throw new IllegalArgumentException("cannot set " + name + " to " + text(value), e);
+		}
+		return treeParams;
+	}
+
+	//a value as it appears in a key
+	private static String text(Object value) {
+		if (value instanceof float[])
+			return Arrays.toString((float[])value).replace(" ", "");
+		return String.valueOf(value).replace(" ", "");
+	}
+}
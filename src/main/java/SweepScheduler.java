@@ -0,0 +1,110 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+//grows many independent simulations on a fixed number of threads, one simulation per thread at a time. The runs with
+//the most trees are started first so that no large run is left going on its own at the end. Results come back in the
+//order the runs were given, whatever order they finished in
+public class SweepScheduler {
+	final int threads;
+	StatsSink stats; //if not null, every simulation grown hands its yearly statistics to it
+	Listener listener; //if not null, told of each result as soon as its run finishes
+
+	//what is recorded from a simulation once it has grown. The simulation is grown from a copy of the parameters of
+	//its run, so they cannot be used to tell which run it was
+	interface Measure {
+		float of(Simulation simulation);
+	}
+
+	//told of the result of a run, by the index of the run, on the thread that grew it
+	interface Listener {
+		void finished(int run, float result);
+	}
+
+	SweepScheduler(int threads) {
+		this.threads = threads;
+	}
+
+	//one thread for each processor
+	SweepScheduler() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	//grows a simulation of general deciduous trees for each of the parameters and returns the measure of each, in the
+	//order of the parameters
+	float[] run(List<SimulationParams> runs, Measure measure, SimulationView view) {
+		List<TreeParams> trees = new ArrayList<TreeParams>(runs.size());
+		for (int i = 0; i < runs.size(); i++) {
+			trees.add(TreeParams.createGeneralDeciduousTreeParams());
+		}
+		return run(runs, trees, measure, view);
+	}
+
+	//grows a simulation for each pair of parameters and returns the measure of each, in the order of the parameters.
+	//Each run uses a single thread for its trees and light, the parallelism is across runs
+	float[] run(final List<SimulationParams> runs, final List<TreeParams> trees, final Measure measure, final SimulationView view) {
+		Integer[] largestFirst = new Integer[runs.size()];
+		for (int i = 0; i < largestFirst.length; i++) {
+			largestFirst[i] = i;
+		}
+		Arrays.sort(largestFirst, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Long.compare(cost(runs.get(b)), cost(runs.get(a)));
+			}
+		});
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<Float>> futures = new ArrayList<Future<Float>>(runs.size());
+		for (int i = 0; i < runs.size(); i++) {
+			futures.add(null);
+		}
+		try {
+			for (int i: largestFirst) {
+				final SimulationParams params = runs.get(i).copy(); //the caller's parameters are left as they were
+				params.lightThreads = 1;
+				params.treeThreads = 0;
+				final TreeParams treeParams = trees.get(i);
+				final int run = i;
+				futures.set(i, pool.submit(new Callable<Float>() {
+					public Float call() {
+						Simulation simulation = new Simulation(params, treeParams);
+						if (stats != null)
+							simulation.addStatsSink(stats);
+						view.setSimulation(simulation);
+						simulation.growOnceAndStop();
+						float result = measure.of(simulation);
+						if (listener != null)
+							listener.finished(run, result);
+						return result;
+					}
+				}));
+			}
+			float[] results = new float[runs.size()];
+			for (int i = 0; i < results.length; i++) {
+				results[i] = futures.get(i).get();
+			}
+			return results;
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+		catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+		finally {
+			pool.shutdownNow();
+		}
+	}
+
+	//rough amount of work in a run: the number of trees times the number of cells of the voxel grid they grow in
+	static long cost(SimulationParams params) {
+		Vector3 cells = params.size.dividedBy(params.vGridCellSize);
+		return (long)params.numTreesX * params.numTreesY * (long)(cells.x * cells.y * cells.z);
+	}
+}
@@ -1,13 +1,9 @@
-import java.util.ArrayList;
-import java.util.Collections;
-
-import javax.media.opengl.GL2;
-import javax.media.opengl.glu.GLU;
+import java.io.IOException;
 
 //A tree, or collection of segments
 public class Tree {
 
-	Segment root; 
+	SegmentStore segments; //all segments of the tree, the root is SegmentStore.ROOT
 	VoxelGrid voxels;
 	public int age; // years
 	double totalStemMass; // kg/m3
@@ -15,58 +11,128 @@ public class Tree {
 	double totalLeafMass; // kg/m3
 	TreeParams tParams;
 	SimulationParams simParams;
+	RandomStream random; //random numbers of the tree, split by year
+	private TreeStats metrics; //measures of the tree this year, worked out when first asked for, null until then
 
 	Tree(SimulationParams sParamsIn, TreeParams paramsIn, VoxelGrid voxelsIn, float x, float y) {
 		simParams = sParamsIn;
 		tParams = paramsIn;
 		voxels = voxelsIn;
-		root = new Segment(null, new Vector3(x, y, 0), new Vector3(0, 0, tParams.segmentLength()), tParams, simParams); 
+		segments = new SegmentStore(tParams, simParams);
+		segments.addRoot(new Vector3(x, y, 0), new Vector3(0, 0, tParams.segmentLength()), voxels); 
 		age = 0;																					
 	}
 
+	//a tree read from a checkpoint, see writeCheckpoint
+	Tree(SimulationParams sParamsIn, TreeParams paramsIn, VoxelGrid voxelsIn, Checkpoint in) throws IOException {
+		simParams = sParamsIn;
+		tParams = paramsIn;
+		voxels = voxelsIn;
+		segments = new SegmentStore(tParams, simParams);
+		age = in.getInt();
+		totalStemMass = in.getDouble();
+		totalMass = in.getDouble();
+		totalLeafMass = in.getDouble();
+		random = new RandomStream(in.getLong());
+		segments.readCheckpoint(in);
+		segments.invalidateAggregates(); //the wind may have changed
+	}
+
+	//a copy of this tree growing in a forked simulation, see Simulation.fork
+	Tree fork(SimulationParams sParamsIn, TreeParams paramsIn, VoxelGrid voxelsIn) {
+		Tree tree = new Tree(sParamsIn, paramsIn, voxelsIn);
+		tree.segments = segments.fork(paramsIn, sParamsIn);
+		tree.age = age;
+		tree.totalStemMass = totalStemMass;
+		tree.totalMass = totalMass;
+		tree.totalLeafMass = totalLeafMass;
+		tree.random = random;
+		return tree;
+	}
+
+	private Tree(SimulationParams sParamsIn, TreeParams paramsIn, VoxelGrid voxelsIn) {
+		simParams = sParamsIn;
+		tParams = paramsIn;
+		voxels = voxelsIn;
+	}
+
+	//writes the tree between two years
+	void writeCheckpoint(Checkpoint out) throws IOException {
+		out.putInt(age);
+		out.putDouble(totalStemMass);
+		out.putDouble(totalMass);
+		out.putDouble(totalLeafMass);
+		out.putLong(random.seed);
+		segments.writeCheckpoint(out);
+	}
+
 	// updates everything related to the tree (can be changed to print certain statistics, if statistics are wanted on every tick)
 	void update() {
+		if (grow())
+			finishYear();
+	}
+
+	//makes the tree only record the cells it fills and empties, so that trees can grow at the same time.
+	//commitClaims makes the changes to the voxel grid
+	void growAlongsideOthers() {
+		segments.claims = new CellClaims();
+	}
+
+	//grows the tree by one year: widths, dying branches and new branches. Returns false if the tree is too old to grow
+	boolean grow() {
 		if (age >= tParams.maxAge())
-			return;
+			return false;
 		age++;
-		if (age < 10) {
-			tParams.branchAngleFactor = tParams.youngBranchAngleFactor();
-		}
-		else {
-			tParams.branchAngleFactor = tParams.oldBranchAngleFactor();
-		}
-		float carbonBudget = root.computeCarbonBudget(voxels);
+		segments.branchAngleFactor = tParams.branchAngleFactor(age);
+		float carbonBudget = segments.computeCarbonBudget(SegmentStore.ROOT, voxels);
 		//System.out.println("Initial Carbon Budget: " + carbonBudget);
-		ArrayList<Segment> segmentsByAge = root.getDescendantsPlusThis(); //list of the segments sorted by age, allows update to update based on depth in tree rather than randomly
-		for (Segment s : segmentsByAge) {
-			s.resetValues();
-			s.ageOneYear();
+		for (int s = 0; s < segments.count; s++) {
+			if (!segments.dead[s])
+				segments.ageOneYear(s);
 		}
 		
 		//for (int i = 0; carbonBudget > 0; i++) { //multiple growth cycles in one year, currently not using
-			carbonBudget = root.updateSegmentWidth(voxels, carbonBudget); // updates the rootSegment and recursively updates all of its children as well
+			carbonBudget = segments.updateSegmentWidth(SegmentStore.ROOT, voxels, carbonBudget); // updates the rootSegment and all of its descendants
 			//System.out.println("Carbon Budget after growing width " + i + ": " + carbonBudget);
-			segmentsByAge = root.getDescendantsPlusThis();
-			Collections.sort(segmentsByAge, new CompareSegmentAge());
-			for (Segment s : segmentsByAge) {
+			int byAge = segments.sortByAge(SegmentStore.ROOT); //segments sorted by age, allows update to update based on depth in tree rather than randomly
+			segments.drawForYear(random.split(age), byAge);
+			for (int i = 0; i < byAge; i++) {
 				if (carbonBudget > 0) {
-					carbonBudget = s.updateSegmentBranching(voxels, carbonBudget);
+					carbonBudget = segments.updateSegmentBranching(segments.byAge[i], voxels, carbonBudget);
 				}
 				else
 					break;
 			}
 			//System.out.println("Carbon Budget after branching " + i + ": " + carbonBudget);
 		//}
-		for (Segment s : segmentsByAge) {
-			s.resetValues();
+		return true;
+	}
+
+	//makes the changes to the voxel grid that the tree recorded while growing. New segments whose cell was claimed by a
+	//tree that committed earlier are removed again
+	void commitClaims() {
+		CellClaims claims = segments.claims;
+		voxels.setCellsEmpty(claims.released, 0, claims.releasedCount);
+		for (int i = 0; i < claims.claimedCount; i++) {
+			if (voxels.cellFull(claims.claimed[i]))
+				segments.discard(claims.claimedBy[i]);
+			else
+				voxels.setCellFull(claims.claimed[i], true);
 		}
+		claims.clear();
+	}
 
-		totalStemMass = root.computeMassWithDescendants();
-		totalLeafMass = root.getMassOfLeaves();
+	//works out the totals of the tree after it has grown
+	void finishYear() {
+		segments.computeAggregates(SegmentStore.ROOT); //only the segments that changed and the ones above them are worked out again
+		metrics = null;
+
+		totalStemMass = segments.computeMassWithDescendants(SegmentStore.ROOT);
+		totalLeafMass = segments.getMassOfLeaves(SegmentStore.ROOT);
 		totalMass = totalStemMass + totalLeafMass;		
 		//System.out.println(totalMass);
-		//int segments = root.countDescendants();
-		//int leaves = root.countLeaves();
+		//int segmentCount = segments.countDescendants(SegmentStore.ROOT);
+		//int leaves = segments.countLeaves(SegmentStore.ROOT);
 		//if(age > 30) //prints the total mass, mass of leaves, and appropriate ratio for tree depending on its age
 		//	printMtMlRelationship();
 		//else
@@ -74,17 +140,43 @@ public class Tree {
 		//printAgeHeightDiameterTotalMass();
 		//printHeightDiameterRelationship();
 		//System.out.println(leaves); //prints the number of leaves
-		//System.out.println(segments); //prints the number of segments
+		//System.out.println(segmentCount); //prints the number of segments
 	}
 	
+	//the measures of the tree this year: masses, timber, height, basal diameter, segment and leaf counts, and center
+	//of mass. Worked out in one walk over the segments the first time they are asked for in a year, after that they
+	//are read from the tree. Not to be changed, see stats
+	TreeStats metrics() {
+		if (metrics == null) {
+			TreeStats m = new TreeStats();
+			m.totalMass = (float)totalMass;
+			m.stemMass = (float)totalStemMass;
+			m.leafMass = (float)totalLeafMass;
+			segments.measure(SegmentStore.ROOT, m);
+			m.diameter = segments.segWidth[SegmentStore.ROOT];
+			Vector3 com = segments.centerOfMass(SegmentStore.ROOT);
+			m.comX = com.x;
+			m.comY = com.y;
+			m.comZ = com.z;
+			metrics = m;
+		}
+		return metrics;
+	}
+
+	//statistics of the tree as it is now, for the StatsSinks of the simulation
+	TreeStats stats() {
+		return metrics().copy();
+	}
+
 	//prints the center of mass
 	void printCOM() {
-		System.out.println("Center of Mass: " + root.centerOfMass() + ".");
+		TreeStats m = metrics();
+		System.out.println("Center of Mass: " + new Vector3(m.comX, m.comY, m.comZ) + ".");
 	}
 	
 	//prints the wind force and the center of the wind force
 	void printWindForceAndCenter() {
-		System.out.println("  WindForce: " + root.getWindHorizontalForce() + ". Wind Center: " + root.getCenterOfWindForce());
+		System.out.println("  WindForce: " + segments.getWindHorizontalForce(SegmentStore.ROOT) + ". Wind Center: " + segments.getCenterOfWindForce(SegmentStore.ROOT));
 	}
 	
 	//prints the actual mass of leaves, predicted mass of leaves (using B3Ms^a3), and ratio of predicted/actual
@@ -117,8 +209,8 @@ public class Tree {
 	
 	//prints the tree height, tree diameter, and appropriate ratio between the two (Diameter exponent: 2/3)
 	void printHeightDiameterRelationship() {
-		float treeHeight = root.getHighestSegment(0);
-		float treeDiameter = root.segWidth;
+		float treeHeight = metrics().height;
+		float treeDiameter = metrics().diameter;
 		System.out.print(age + " ");
 		System.out.print(treeHeight + " ");
 		System.out.print(treeDiameter + " ");
@@ -129,8 +221,8 @@ public class Tree {
 	
 	//prints the tree age, height, diameter, and total mass 
 	void printAgeHeightDiameterTotalMass() {
-		float treeHeight = root.getHighestSegment(0);
-		float treeDiameter = root.segWidth;
+		float treeHeight = metrics().height;
+		float treeDiameter = metrics().diameter;
 		System.out.print(age + " ");
 		System.out.print(treeHeight + " ");
 		System.out.print(treeDiameter + " ");
@@ -139,34 +231,14 @@ public class Tree {
 	}
 	
 
-	// draws the tree
-	void draw(GL2 gl, GLU glu) {
-		root.drawSegments(gl, glu);
-	}
-	
 	//returns totalMass of the tree
 	float totalMass() {
 		return (float)totalMass;
 	}
 
-	//test method: prints the ages of the segments in a list
-	void printAges (ArrayList<Segment> s) {
-		for (int i = 0; i < s.size(); i ++) {
-			System.out.print(s.get(i).getAge() + ", ");
-		}
-		System.out.println();
-	}
-	
 	//returns the amount of usable timber from a tree
 	public float timberMass() {
-		float mass = 0;
-		ArrayList<Segment> segments = root.getDescendantsPlusThis();
-		for (Segment s: segments) {
-			if (s.getWidth() > simParams.timberDiameter) {
-				mass += s.getSegmentMass();
-			}
-		}
-		return mass;
+		return metrics().timberMass;
 	}
 
 
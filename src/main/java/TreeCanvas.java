@@ -26,7 +26,7 @@ import com.jogamp.opengl.util.texture.TextureIO;
 
   //A 3D Canvas to draw/display trees.
  
-public class TreeCanvas extends GLCanvas implements GLEventListener, MouseMotionListener, MouseListener, GLAutoDrawable{
+public class TreeCanvas extends GLCanvas implements SimulationView, GLEventListener, MouseMotionListener, MouseListener, GLAutoDrawable{
 
     /** Serial version UID. */
     private static final long serialVersionUID = 1L;
@@ -36,6 +36,9 @@ public class TreeCanvas extends GLCanvas implements GLEventListener, MouseMotion
 
     /** The simulation to draw.  */
     private Simulation simulation;
+
+    /** Draws the simulation. */
+    private final SimulationRenderer renderer = new SimulationRenderer();
     
     private boolean isRotating;
 
@@ -124,7 +127,7 @@ public class TreeCanvas extends GLCanvas implements GLEventListener, MouseMotion
         gl.glMaterialf(GL.GL_FRONT, GL2.GL_SHININESS, 0.5f);
 
         // Draw simulation.
-        simulation.draw(gl, glu);
+        renderer.draw(gl, glu, simulation);
     }
     
     /**
@@ -145,21 +148,22 @@ public class TreeCanvas extends GLCanvas implements GLEventListener, MouseMotion
         if (isRotating) {
             cameraRotation += .03;
         }
-        float halfX = Simulation.SIZE.x / 2;
-        float halfY = Simulation.SIZE.y / 2;
-        if (SimulationParams.cameraDistance == 1) {
+        float halfX = simulation.simParams.size.x / 2;
+        float halfY = simulation.simParams.size.y / 2;
+        int cameraDistance = simulation.simParams.cameraDistance;
+        if (cameraDistance == 1) {
             glu.gluLookAt(halfX + 8 * Math.sin(cameraRotation),
                 	halfY + 8 * Math.cos(cameraRotation), 1.5,  // Eye location.
                 	halfX, halfY, 2,  // Look at point.
                 	0, 0, 1);  // Up direction.
         }
-        else if (SimulationParams.cameraDistance == 2) {
+        else if (cameraDistance == 2) {
             glu.gluLookAt(halfX + 16 * Math.sin(cameraRotation),
                 	halfY + 16 * Math.cos(cameraRotation), 3,  // Eye location.
                 	halfX, halfY, 2,  // Look at point.
                 	0, 0, 1);  // Up direction.
         }
-        else if (SimulationParams.cameraDistance == 3) {
+        else if (cameraDistance == 3) {
         	glu.gluLookAt(halfX + 48 * Math.sin(cameraRotation),
                 	halfY + 48 * Math.cos(cameraRotation), 15,  // Eye location.
                 	halfX, halfY, 4,  // Look at point.
@@ -300,4 +304,22 @@ public class TreeCanvas extends GLCanvas implements GLEventListener, MouseMotion
         int my = e.getYOnScreen();
 	}
 
+	//main function, shows the trees in a window. HeadlessSimulation runs the experiments without one
+    public final static void main(String[] args) { 
+		SimulationParams simParams = SimulationParams.createSimulationParamsEquator();
+		Simulation simulation = new Simulation(simParams);
+		TreeCanvas canvas = createCanvas(simulation);
+    	//simulation.growOnceAndRotate();
+    	//Simulation.growOverAndOver(canvas);
+		//simulation.growSameTree();
+		//Simulation.experimentMaximizeTimberProduction(canvas);
+		simulation.close(); //only shown until the demo puts its own simulations in the window
+		Simulation.demo(canvas);
+		//Simulation.experimentMaximizeCarbonUptake(canvas);
+		//Simulation.experiment30TreesPrintCOM(canvas);
+		//Simulation.experiment30TreesPrintMlMsRelationship(canvas);
+		//Simulation.experiment30TreesPrintHeightDiameterRelationship(canvas);
+		//Simulation.experiment30TreesPrintMtMlRelationship(canvas);
+    }
+
 }
\ No newline at end of file
@@ -1,8 +1,7 @@
 
 public class TreeParams {
 	// Size of random vector added to unit vector of parent segment's direction
-	// to determine direction of child segment.
-	public float branchAngleFactor;
+	// to determine direction of child segment, young trees use one and older trees the other
 	private float youngBranchAngleFactor;
 	private float oldBranchAngleFactor;
 	private float segmentLength; //meters
@@ -87,6 +86,51 @@ public class TreeParams {
 		return t;
 	}
 	
+	//a copy with one parameter, named as its field, set to the given value, e.g. for each value of a sweep. The
+	//parameters of a species are never changed once its factory has built them
+	public TreeParams with(String name, float value) {
+		TreeParams t = copy();
+		switch (name) {
+		case "youngBranchAngleFactor": t.youngBranchAngleFactor = value; break;
+		case "oldBranchAngleFactor": t.oldBranchAngleFactor = value; break;
+		case "segmentLength": t.segmentLength = value; break;
+		case "woodDensity": t.woodDensity = value; break;
+		case "dragCoefficient": t.dragCoefficient = value; break;
+		case "massOfLeaf": t.massOfLeaf = value; break;
+		case "leafArea": t.leafArea = value; break;
+		case "fractionAbsorbed": t.fractionAbsorbed = value; break;
+		case "efficiency": t.efficiency = value; break;
+		case "rootApportion": t.rootApportion = value; break;
+		case "maxAge": t.maxAge = (int)value; break;
+		case "woodWaterFraction": t.woodWaterFraction = value; break;
+		case "leafDryMass": t.leafDryMass = value; break;
+		case "stressProportion": t.stressProportion = value; break;
+		case "maxLeafAge": t.maxLeafAge = (int)value; break;
+		default: throw new IllegalArgumentException("no tree parameter " + name);
+		}
+		return t;
+	}
+
+	private TreeParams copy() {
+		TreeParams t = new TreeParams();
+		t.youngBranchAngleFactor = youngBranchAngleFactor;
+		t.oldBranchAngleFactor = oldBranchAngleFactor;
+		t.segmentLength = segmentLength;
+		t.woodDensity = woodDensity;
+		t.dragCoefficient = dragCoefficient;
+		t.massOfLeaf = massOfLeaf;
+		t.leafArea = leafArea;
+		t.fractionAbsorbed = fractionAbsorbed;
+		t.efficiency = efficiency;
+		t.rootApportion = rootApportion;
+		t.maxAge = maxAge;
+		t.woodWaterFraction = woodWaterFraction;
+		t.leafDryMass = leafDryMass;
+		t.stressProportion = stressProportion;
+		t.maxLeafAge = maxLeafAge;
+		return t;
+	}
+
 	//accessing methods
 	
 	public float youngBranchAngleFactor() {
@@ -97,8 +141,9 @@ public class TreeParams {
 		return oldBranchAngleFactor;
 	}
 	
-	public float branchAngleFactor() {
-		return branchAngleFactor;
+	//branch angle factor for a tree of the given age
+	public float branchAngleFactor(int age) {
+		return age < 10 ? youngBranchAngleFactor : oldBranchAngleFactor;
 	}
 	
 	public int maxLeafAge() {
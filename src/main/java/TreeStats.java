@@ -0,0 +1,58 @@
+//statistics of one tree at the end of a year
+public class TreeStats extends YearStats {
+	static final String[] COLUMNS = {"year", "tree", "totalMass", "stemMass", "leafMass", "timberMass", "height",
+			"diameter", "segments", "leaves", "comX", "comY", "comZ"};
+
+	int tree; //index of the tree in the simulation
+	float totalMass, stemMass, leafMass, timberMass; //kg
+	float height, diameter; //m, the diameter is the one of the root segment
+	int segments, leaves;
+	float comX, comY, comZ; //center of mass
+
+	//a copy that can be handed on and changed
+	TreeStats copy() {
+		TreeStats copy = new TreeStats();
+		copy.seed = seed;
+		copy.year = year;
+		copy.tree = tree;
+		copy.totalMass = totalMass;
+		copy.stemMass = stemMass;
+		copy.leafMass = leafMass;
+		copy.timberMass = timberMass;
+		copy.height = height;
+		copy.diameter = diameter;
+		copy.segments = segments;
+		copy.leaves = leaves;
+		copy.comX = comX;
+		copy.comY = comY;
+		copy.comZ = comZ;
+		return copy;
+	}
+
+	String[] columns() {
+		return COLUMNS;
+	}
+
+	void values(float[] into) {
+		into[0] = year;
+		into[1] = tree;
+		into[2] = totalMass;
+		into[3] = stemMass;
+		into[4] = leafMass;
+		into[5] = timberMass;
+		into[6] = height;
+		into[7] = diameter;
+		into[8] = segments;
+		into[9] = leaves;
+		into[10] = comX;
+		into[11] = comY;
+		into[12] = comZ;
+	}
+
+	void appendCsv(StringBuilder line) {
+		line.append(year).append(',').append(tree).append(',').append(totalMass).append(',').append(stemMass)
+			.append(',').append(leafMass).append(',').append(timberMass).append(',').append(height).append(',')
+			.append(diameter).append(',').append(segments).append(',').append(leaves).append(',').append(comX)
+			.append(',').append(comY).append(',').append(comZ);
+	}
+}
@@ -0,0 +1,177 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+//keeps the occupancy and light chunks of a voxel grid in a memory mapped file instead of on the heap, so the size of
+//a plot is limited by disk and page cache rather than the heap. The file can be opened again as a read-only snapshot
+//layout: header, occupancy bits, chunk table (one int per chunk of the grid, 0 if it is missing, otherwise the
+//number of its slot + 1), then the chunk slots, mapped one region at a time as the file grows
+public class VoxelFile {
+	static final int MAGIC = 0x5a564f58;
+	static final int VERSION = 1;
+	static final int HEADER_BYTES = 128;
+	static final int GRID_HEADER = 32; //start of the part of the header that describes the grid
+	static final int SLOTS_PER_REGION = 1 << 14;
+
+	private RandomAccessFile raf;
+	private FileChannel channel;
+	private MapMode mode;
+	private ByteOrder order;
+	private MappedByteBuffer start; //header, occupancy and chunk table
+	private LongBuffer occupied;
+	private IntBuffer table;
+	private long regionsStart; //position of the first chunk slot in the file
+	private int chunkFloats; //values in one chunk
+	private ArrayList<MappedByteBuffer> regions = new ArrayList<MappedByteBuffer>();
+	private int slotCount; //slots handed out so far, including the freed ones
+	private int[] freeSlots = new int[64];
+	private int freeCount = 0;
+
+	private VoxelFile() {
+	}
+
+	//creates a new file, replacing anything already there
+	static VoxelFile create(File file, int occupancyWords, int chunks, int chunkFloats) throws IOException {
+		VoxelFile v = new VoxelFile();
+		v.raf = new RandomAccessFile(file, "rw");
+		v.raf.setLength(0);
+		v.mode = MapMode.READ_WRITE;
+		v.order = ByteOrder.nativeOrder();
+		v.chunkFloats = chunkFloats;
+		v.map(occupancyWords, chunks);
+		v.start.put(0, (byte)(v.order == ByteOrder.LITTLE_ENDIAN ? 1 : 0));
+		v.start.putInt(4, MAGIC);
+		v.start.putInt(8, VERSION);
+		v.start.putInt(12, chunkFloats);
+		v.start.putInt(16, chunks);
+		v.start.putInt(20, 0);
+		v.start.putInt(24, occupancyWords);
+		return v;
+	}
+
+	//opens a file written by create, nothing in it can be changed
+	static VoxelFile openReadOnly(File file) throws IOException {
+		VoxelFile v = new VoxelFile();
+		v.raf = new RandomAccessFile(file, "r");
+		v.mode = MapMode.READ_ONLY;
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+		v.raf.getChannel().read(header, 0);
+		v.order = header.get(0) == 1 ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+		header.order(v.order);
+		if (header.getInt(4) != MAGIC || header.getInt(8) != VERSION) {
+			v.raf.close();
+			throw new IOException(file + " is not a voxel grid file");
+		}
+		v.chunkFloats = header.getInt(12);
+		v.map(header.getInt(24), header.getInt(16));
+		v.slotCount = header.getInt(20);
+		for (int i = 0; i * SLOTS_PER_REGION < v.slotCount; i++) {
+			v.mapRegion();
+		}
+		return v;
+	}
+
+	//maps the header, occupancy and chunk table
+	private void map(int occupancyWords, int chunks) throws IOException {
+		channel = raf.getChannel();
+		long tableStart = HEADER_BYTES + 8L * occupancyWords;
+		regionsStart = (tableStart + 4L * chunks + 7) & ~7L;
+		start = channel.map(mode, 0, regionsStart);
+		start.order(order);
+		occupied = slice(start, HEADER_BYTES, tableStart).asLongBuffer();
+		table = slice(start, tableStart, tableStart + 4L * chunks).asIntBuffer();
+	}
+
+	//maps the next region of chunk slots, growing the file if it is not that long yet
+	private void mapRegion() throws IOException {
+		long bytes = 4L * chunkFloats * SLOTS_PER_REGION;
+		MappedByteBuffer region = channel.map(mode, regionsStart + regions.size() * bytes, bytes);
+		region.order(order);
+		regions.add(region);
+	}
+
+	//part of a buffer as its own buffer with the byte order of the file
+	private ByteBuffer slice(ByteBuffer buffer, long from, long to) {
+		ByteBuffer part = buffer.duplicate();
+		part.position((int)from);
+		part.limit((int)to);
+		return part.slice().order(order);
+	}
+
+	//the part of the header that describes the grid
+	ByteBuffer gridHeader() {
+		return slice(start, GRID_HEADER, HEADER_BYTES);
+	}
+
+	//one bit per cell of the grid
+	LongBuffer occupancy() {
+		return occupied;
+	}
+
+	//the values of the given chunk, or null if it is missing
+	FloatBuffer chunk(int chunk) {
+		int slot = table.get(chunk) - 1;
+		if (slot < 0)
+			return null;
+		return view(slot);
+	}
+
+	//gives a chunk a slot in the file, its values are left as they were
+	synchronized FloatBuffer allocate(int chunk) {
+		int slot;
+		if (freeCount > 0) {
+			slot = freeSlots[--freeCount];
+		}
+		else {
+			slot = slotCount++;
+			start.putInt(20, slotCount);
+			if (slot == regions.size() * SLOTS_PER_REGION) {
+				try {
+					mapRegion();
+				}
+				catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+		}
+		table.put(chunk, slot + 1);
+		return view(slot);
+	}
+
+	//frees the slot of a chunk so another chunk can use it
+	synchronized void release(int chunk) {
+		if (freeCount == freeSlots.length)
+			freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+		freeSlots[freeCount++] = table.get(chunk) - 1;
+		table.put(chunk, 0);
+	}
+
+	//the values stored in a slot
+	private FloatBuffer view(int slot) {
+		long bytes = 4L * chunkFloats;
+		long from = (slot % SLOTS_PER_REGION) * bytes;
+		return slice(regions.get(slot / SLOTS_PER_REGION), from, from + bytes).asFloatBuffer();
+	}
+
+	//writes everything to disk and closes the file
+	void close() throws IOException {
+		if (mode == MapMode.READ_WRITE) {
+			start.force();
+			for (MappedByteBuffer region : regions) {
+				region.force();
+			}
+		}
+		raf.close();
+	}
+}
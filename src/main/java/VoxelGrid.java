@@ -1,5 +1,12 @@
-import javax.media.opengl.GL2;
-import javax.media.opengl.glu.GLU;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 //3D index of space that is used for light propagation and prevention of intersections
 public class VoxelGrid {
@@ -9,60 +16,440 @@ public class VoxelGrid {
 	final int EAST = 3;
 	final int WEST = 4;
 	final boolean DIRECTIONAL = true; //true if directional, false if nondirectional
-	final float[] startLight = SimulationParams.startLightDirections;
+	final float[] startLight;
 
 	Vector3 size; //number of cells in the voxelgrid in each dimension
 	float CELL_SIZE; //meters
 	float lightFactor = 0.15f;//used in nondirectional
 	int maxZ = 1; //maximum z coordinate that light needs to be updated from
+	final int lightUpdate; //how the light is brought up to date each year, see SimulationParams
+	static final int FULL_LIGHT_UPDATE = 1;
+	static final int INCREMENTAL_LIGHT_UPDATE = 2;
+	static final int COLUMN_LIGHT_UPDATE = 3;
+	private ColumnLight columns; //occupied cells counted along each path of light, null unless the light is updated that way
 
-	//pixel of volume in the voxel grid
-	private class Voxel {
-		boolean occupied = false;
-		float lightIn = 0.0f;
-		float lightOut = 0.0f;
-		float directionalLightIn[];
-		float directionalLightOut[];
-		Voxel() {
-			if (DIRECTIONAL)
-			{
-				directionalLightIn = new float[5];
-				directionalLightOut = new float[5];
-			}
-		}
-	}
+	//occupancy is kept for every cell as one bit, cells are numbered x fastest, then y, then z
+	int nx, ny, nz; //number of cells in each dimension
+	int area; //number of cells in a layer
+	private LongBuffer occupied; //one bit per cell, 64 cells to a word
 
-	private Voxel[][][] voxels;
+	//light is kept in chunks of CHUNK x CHUNK cells of one layer. A chunk is only created once the light in it differs
+	//from an open sky, so memory grows with the shaded part of the plot instead of the whole box. Cells of a missing
+	//chunk get the unattenuated light
+	static final int CHUNK_BITS = 4;
+	static final int CHUNK = 1 << CHUNK_BITS; //cells along each side of a chunk
+	static final int CHUNK_CELLS = CHUNK * CHUNK;
+	int chunksX, chunksY; //number of chunks across a layer in each dimension
+	final int outCount = DIRECTIONAL ? 5 : 1; //values of light leaving a cell, one per direction (DNSEW) or the total
+	final int storedOut; //values of light leaving a cell kept in the chunks, only needed to update the light incrementally
+	private FloatBuffer[] chunks; //light in for each cell of the chunk, followed by storedOut values of light out
+	private boolean[] sharedChunks; //chunks shared with a forked grid, copied before they are written. Null if none are
+	private int[] chunkOccupied; //number of occupied cells in each chunk
+	final float openLight; //light coming into a cell that nothing above shades
+	int litTop; //highest layer light has been propagated into, cells above it get no light yet
+	private VoxelFile file; //file the occupancy and chunks are mapped from, null if they are kept on the heap
+
+	//a full update works on two planes that each cover one layer, the one being computed and the one above it
+	//the planes have a one cell halo around them holding copies of the opposite edge, so neighbours can be read
+	//without wrapping the index around the plot
+	int rowStride; //distance between two neighbouring cells in y in a plane
+	int planeSize;
+	private float[][] planeOut, planeAboveOut; //light leaving each cell of the plane, outCount arrays
+	private float[] planeIn; //light coming into each cell of the plane
+	private boolean[] chunkUnshaded; //chunks of the layer being computed that only get unattenuated light
+
+	//chunk rows of a layer are split between threads when propagating light, each layer waits for the one above it
+	static final int MIN_CELLS_PER_TASK = 2048; //smallest piece of a layer that is handed to a thread
+	private ForkJoinPool lightPool; //null if light is propagated on the calling thread
+	private DirectionalKernel vectorKernel; //kernel that works on several cells at once, null to use the scalar loop
+
+	//cells that were filled or emptied since the light was last updated, only the light below them is recomputed
+	private int[] changedCells = new int[64];
+	private int changedCount = 0;
+	private int seededLayer; //layer the light was started from in the last update
+	private boolean[] queued, nextQueued; //columns to recompute in the layer below, and a spare that is swapped in every layer
+	private boolean[] queuedRows, nextQueuedRows; //rows that have any queued column
+	private float[] cellOut; //light leaving the cell being recomputed
 
 	//creates a voxel grid
 	VoxelGrid(SimulationParams sParams) {
+		this(sParams, true);
+	}
+
+	//creates a voxel grid, with the light worked out for the empty grid or left for readCheckpoint to fill in
+	private VoxelGrid(SimulationParams sParams, boolean light) {
+		startLight = sParams.startLightDirections.clone();
 		CELL_SIZE = sParams.vGridCellSize;
-		size = Simulation.SIZE.dividedBy(CELL_SIZE);
-		voxels = new Voxel[(int)size.x + 1][(int)size.y + 1][(int)size.z + 1];
-		for (int i = 0; i < size.x; i++)
-		{
-			for (int j = 0; j < size.y; j++)
-			{
-				for (int k = 0; k < size.z; k++)
-				{  
-					voxels[i][j][k] = new Voxel();
-					
-				}
+		size = sParams.size.dividedBy(CELL_SIZE);
+		nx = (int)Math.ceil(size.x);
+		ny = (int)Math.ceil(size.y);
+		nz = (int)Math.ceil(size.z);
+		area = nx * ny;
+		int cells = area * (nz + 1); //one extra layer on top that light can be started from
+		chunksX = (nx + CHUNK - 1) >> CHUNK_BITS;
+		chunksY = (ny + CHUNK - 1) >> CHUNK_BITS;
+		//counting occupied cells along the paths of light only works for directional light and paths that are not too long
+		if (sParams.lightUpdate == COLUMN_LIGHT_UPDATE && (!DIRECTIONAL || nz > ColumnLight.MAX_COUNT))
+			lightUpdate = FULL_LIGHT_UPDATE;
+		else
+			lightUpdate = sParams.lightUpdate;
+		storedOut = lightUpdate == INCREMENTAL_LIGHT_UPDATE ? outCount : 0;
+		chunks = new FloatBuffer[chunksX * chunksY * (nz + 1)];
+		if (sParams.voxelFile != null) {
+			try {
+				file = VoxelFile.create(new File(sParams.voxelFile), (cells + 63) >>> 6, chunks.length, (1 + storedOut) * CHUNK_CELLS);
 			}
+			catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			occupied = file.occupancy();
+		}
+		else {
+			occupied = LongBuffer.allocate((cells + 63) >>> 6);
+		}
+		chunkOccupied = new int[chunks.length];
+		openLight = startLight[DOWN] + startLight[NORTH] + startLight[SOUTH] + startLight[EAST] + startLight[WEST];
+		if (lightUpdate == COLUMN_LIGHT_UPDATE) {
+			columns = new ColumnLight(nx, ny, nz, startLight);
+			//nothing is occupied yet, so every cell that is lit gets unattenuated light
+			litTop = (int)size.z - 2;
+			writeHeader();
+			return;
 		}
-		//initially sets light to be available at all unupdated points to prevent problems with multiple growth cycles
+		rowStride = nx + 2;
+		planeSize = rowStride * (ny + 2);
+		planeOut = new float[outCount][planeSize];
+		planeAboveOut = new float[outCount][planeSize];
+		planeIn = new float[planeSize];
+		chunkUnshaded = new boolean[chunksX * chunksY];
+		queued = new boolean[area];
+		nextQueued = new boolean[area];
+		queuedRows = new boolean[ny];
+		nextQueuedRows = new boolean[ny];
+		cellOut = new float[outCount];
+		if (sParams.lightThreads > 1) {
+			lightPool = new ForkJoinPool(sParams.lightThreads);
+		}
+		if (sParams.vectorLight && DIRECTIONAL) {
+			vectorKernel = loadVectorKernel();
+		}
+		if (light) {
+			sweepFromTop();
+		}
+		writeHeader();
+	}
+
+	//sets light to be available at all unupdated points to prevent problems with multiple growth cycles
+	private void sweepFromTop() {
+		int highest = maxZ;
 		maxZ = (int)size.z - 2;
-		updateLight();
-		maxZ = 1;
+		sweepLight();
+		maxZ = highest;
+	}
+
+	//writes the occupancy and light of the grid between two years, after the light was updated
+	void writeCheckpoint(Checkpoint out) throws IOException {
+		out.putInt(nx);
+		out.putInt(ny);
+		out.putInt(nz);
+		out.putInt(lightUpdate);
+		for (int k = 0; k < 5; k++) {
+			out.putFloat(startLight[k]);
+		}
+		out.putInt(litTop);
+		out.putInt(maxZ);
+		out.putInt(seededLayer);
+		out.putLongs(occupied);
+		out.putInts(chunkOccupied, chunkOccupied.length);
+		for (int i = 0; i < chunks.length; i++) {
+			out.putInt(chunks[i] == null ? 0 : chunks[i].capacity());
+			if (chunks[i] != null)
+				out.putFloats(chunks[i]);
+		}
+	}
+
+	//a grid for a fork of the simulation of this grid, with the same occupancy and light. The light chunks and the
+	//counts of occupied cells along the paths of light are shared, whichever grid writes to one first copies it, so
+	//forks only take memory for the light that changes after them. The parameters can differ except for the plot and
+	//cells, if the light comes from other directions or is updated in another way it is worked out again.
+	//Grids kept in a file copy their chunks instead of sharing them
+	VoxelGrid fork(SimulationParams sParams) {
+		VoxelGrid grid = new VoxelGrid(sParams, false);
+		if (grid.nx != nx || grid.ny != ny || grid.nz != nz)
+			throw new IllegalArgumentException("a fork must have the plot and cells of the grid it is forked from");
+		for (int word = 0; word < occupied.capacity(); word++) {
+			grid.occupied.put(word, occupied.get(word));
+		}
+		System.arraycopy(chunkOccupied, 0, grid.chunkOccupied, 0, chunkOccupied.length);
+		grid.litTop = litTop;
+		grid.maxZ = maxZ;
+		grid.seededLayer = seededLayer;
+		grid.changedCells = Arrays.copyOf(changedCells, changedCells.length);
+		grid.changedCount = changedCount;
+		if (grid.lightUpdate == COLUMN_LIGHT_UPDATE) {
+			if (lightUpdate == COLUMN_LIGHT_UPDATE)
+				grid.columns.share(columns);
+			else
+				grid.countColumns();
+		}
+		else if (grid.lightUpdate != lightUpdate || !Arrays.equals(grid.startLight, startLight)) {
+			grid.sweepFromTop();
+		}
+		else if (file != null || grid.file != null) {
+			for (int i = 0; i < chunks.length; i++) {
+				if (chunks[i] != null)
+					copy(chunks[i], grid.createChunk(i));
+			}
+		}
+		else {
+			if (sharedChunks == null)
+				sharedChunks = new boolean[chunks.length];
+			grid.sharedChunks = new boolean[chunks.length];
+			for (int i = 0; i < chunks.length; i++) {
+				if (chunks[i] != null) {
+					grid.chunks[i] = chunks[i];
+					sharedChunks[i] = true;
+					grid.sharedChunks[i] = true;
+				}
+			}
+		}
+		grid.writeHeader();
+		return grid;
+	}
+
+	//a grid read from a checkpoint. It must have the size and cells of the grid that was written, everything else can
+	//differ. If the light comes from other directions or is updated in another way it is worked out again
+	static VoxelGrid readCheckpoint(Checkpoint in, SimulationParams sParams) throws IOException {
+		VoxelGrid grid = new VoxelGrid(sParams, false);
+		grid.read(in);
+		return grid;
+	}
+
+	private void read(Checkpoint in) throws IOException {
+		if (in.getInt() != nx || in.getInt() != ny || in.getInt() != nz)
+			throw new IOException("the checkpoint is of a grid of another size");
+		boolean sameLight = in.getInt() == lightUpdate;
+		for (int k = 0; k < 5; k++) {
+			sameLight &= in.getFloat() == startLight[k];
+		}
+		litTop = in.getInt();
+		maxZ = in.getInt();
+		seededLayer = in.getInt();
+		in.getLongs(occupied);
+		in.getInts(chunkOccupied, chunkOccupied.length);
+		for (int i = 0; i < chunks.length; i++) {
+			int floats = in.getInt();
+			if (floats > 0)
+				in.getFloats(sameLight ? createChunk(i) : FloatBuffer.allocate(floats));
+		}
+		if (lightUpdate == COLUMN_LIGHT_UPDATE)
+			countColumns();
+		else if (!sameLight)
+			sweepFromTop();
+		writeHeader();
+	}
+
+	//opens a grid file written during an earlier run as a read-only snapshot of its occupancy and light
+	static VoxelGrid openSnapshot(File snapshot) throws IOException {
+		return new VoxelGrid(VoxelFile.openReadOnly(snapshot));
+	}
+
+	//creates a grid from a file, it can be read but not changed
+	private VoxelGrid(VoxelFile file) {
+		this.file = file;
+		ByteBuffer header = file.gridHeader();
+		nx = header.getInt(0);
+		ny = header.getInt(4);
+		nz = header.getInt(8);
+		storedOut = header.getInt(12);
+		CELL_SIZE = header.getFloat(16);
+		size = new Vector3(header.getFloat(20), header.getFloat(24), header.getFloat(28));
+		startLight = new float[5];
+		for (int k = 0; k < 5; k++) {
+			startLight[k] = header.getFloat(32 + 4 * k);
+		}
+		litTop = header.getInt(52);
+		maxZ = header.getInt(56);
+		seededLayer = header.getInt(60);
+		lightUpdate = header.getInt(64);
+		area = nx * ny;
+		chunksX = (nx + CHUNK - 1) >> CHUNK_BITS;
+		chunksY = (ny + CHUNK - 1) >> CHUNK_BITS;
+		chunks = new FloatBuffer[chunksX * chunksY * (nz + 1)];
+		for (int i = 0; i < chunks.length; i++) {
+			chunks[i] = file.chunk(i);
+		}
+		chunkOccupied = new int[chunks.length];
+		openLight = startLight[DOWN] + startLight[NORTH] + startLight[SOUTH] + startLight[EAST] + startLight[WEST];
+		occupied = file.occupancy();
+		if (lightUpdate == COLUMN_LIGHT_UPDATE) {
+			//the counts are not kept in the file, count the occupied cells again
+			columns = new ColumnLight(nx, ny, nz, startLight);
+			countColumns();
+		}
+	}
+
+	//adds every occupied cell to the counts along the paths of light, for counts that start from nothing
+	private void countColumns() {
+		for (int word = 0; word < occupied.capacity(); word++) {
+			long bits = occupied.get(word);
+			while (bits != 0) {
+				changeColumns((word << 6) + Long.numberOfTrailingZeros(bits), 1);
+				bits &= bits - 1;
+			}
+		}
+	}
+
+	//records the size of the grid and how far the light has been propagated in the file
+	private void writeHeader() {
+		if (file == null) {
+			return;
+		}
+		ByteBuffer header = file.gridHeader();
+		header.putInt(0, nx);
+		header.putInt(4, ny);
+		header.putInt(8, nz);
+		header.putInt(12, storedOut);
+		header.putFloat(16, CELL_SIZE);
+		header.putFloat(20, size.x);
+		header.putFloat(24, size.y);
+		header.putFloat(28, size.z);
+		for (int k = 0; k < 5; k++) {
+			header.putFloat(32 + 4 * k, startLight[k]);
+		}
+		header.putInt(52, litTop);
+		header.putInt(56, maxZ);
+		header.putInt(60, seededLayer);
+		header.putInt(64, lightUpdate);
+	}
+
+	//stops the threads that propagate light, and writes a grid that is kept in a file to disk and closes it, the file
+	//can then be opened as a snapshot. The grid can still be read afterwards but not changed
+	void close() throws IOException {
+		if (lightPool != null) {
+			lightPool.shutdown();
+			lightPool = null;
+		}
+		if (file != null) {
+			writeHeader();
+			file.close();
+			file = null;
+		}
+	}
+
+	//the vector kernel if it was compiled in and the jdk.incubator.vector module is present, otherwise null
+	static DirectionalKernel loadVectorKernel() {
+		try {
+			return (DirectionalKernel)Class.forName("VectorLightKernel").getDeclaredConstructor().newInstance();
+		}
+		catch (ReflectiveOperationException e) { //class missing
+			return null;
+		}
+		catch (LinkageError e) { //jdk.incubator.vector module missing, or the vector API could not start
+			return null;
+		}
 	}
 
-	//given a point in 3D space, find the cell in which that point is found
-	Vector3 findCell(Vector3 point) {
-		Vector3 cell = point.cloneVector();
-		cell.scale(1 / CELL_SIZE);
-		float x = (cell.x + size.x) % size.x;
-		float y = (cell.y + size.y) % size.y;
-		return new Vector3(x,y,cell.z);
+	//index of the cell with the given coordinates
+	int index(int x, int y, int z) {
+		return (z * ny + y) * nx + x;
+	}
+
+	static final int NO_CELL = -1; //index returned for points above or below the grid
+
+	//given a point in 3D space, find the index of the cell in which that point is found, or NO_CELL
+	//if it is outside the grid vertically. Points outside horizontally wrap around the plot
+	int cellIndex(Vector3 point) {
+		float scale = 1 / CELL_SIZE;
+		float z = point.z * scale;
+		if (z >= size.z || z <= 0)
+			return NO_CELL;
+		float x = (point.x * scale + size.x) % size.x;
+		float y = (point.y * scale + size.y) % size.y;
+		return index((int)x, (int)y, (int)z);
+	}
+
+	//true if the cell with the given index is occupied
+	private boolean isOccupied(int c) {
+		return (occupied.get(c >>> 6) & (1L << c)) != 0;
+	}
+
+	//index of the chunk holding cell (x, y) of layer z
+	int chunkIndex(int x, int y, int z) {
+		return (z * chunksY + (y >> CHUNK_BITS)) * chunksX + (x >> CHUNK_BITS);
+	}
+
+	//index of the chunk holding the cell with the given index
+	private int chunkOfCell(int c) {
+		int z = c / area;
+		int y = (c - z * area) / nx;
+		return chunkIndex(c - z * area - y * nx, y, z);
+	}
+
+	//position of cell (x, y) within its chunk
+	private static int chunkOffset(int x, int y) {
+		return ((y & (CHUNK - 1)) << CHUNK_BITS) | (x & (CHUNK - 1));
+	}
+
+	//light coming into a cell of layer q that nothing above shades
+	private float openIn(int q) {
+		return DIRECTIONAL && q <= litTop ? openLight : 0;
+	}
+
+	//light leaving a cell in direction k that nothing above shades
+	private float openOut(int k) {
+		return DIRECTIONAL ? startLight[k] : 0;
+	}
+
+	//creates a chunk, its values are not set
+	private FloatBuffer createChunk(int chunk) {
+		FloatBuffer values = file != null ? file.allocate(chunk) : FloatBuffer.allocate((1 + storedOut) * CHUNK_CELLS);
+		chunks[chunk] = values;
+		if (sharedChunks != null)
+			sharedChunks[chunk] = false;
+		return values;
+	}
+
+	//a chunk that light can be written into: created if it is missing and copied if it is shared with a forked grid
+	private FloatBuffer writableChunk(int chunk) {
+		FloatBuffer values = chunks[chunk];
+		if (values == null || (sharedChunks != null && sharedChunks[chunk]))
+			createChunk(chunk);
+		if (values != null && chunks[chunk] != values)
+			copy(values, chunks[chunk]);
+		return chunks[chunk];
+	}
+
+	//copies every value of a chunk into another chunk
+	private static void copy(FloatBuffer from, FloatBuffer to) {
+		for (int i = 0; i < from.capacity(); i++) {
+			to.put(i, from.get(i));
+		}
+	}
+
+	//creates a chunk of layer q holding unattenuated light
+	private FloatBuffer createOpenChunk(int chunk, int q) {
+		FloatBuffer values = createChunk(chunk);
+		for (int i = 0; i < CHUNK_CELLS; i++) {
+			values.put(i, openIn(q));
+		}
+		for (int k = 0; k < storedOut; k++) {
+			for (int i = (1 + k) * CHUNK_CELLS; i < (2 + k) * CHUNK_CELLS; i++) {
+				values.put(i, openOut(k));
+			}
+		}
+		return values;
+	}
+
+	//drops a chunk, its cells get unattenuated light again
+	private void releaseChunk(int chunk) {
+		if (chunks[chunk] != null) {
+			if (sharedChunks != null && sharedChunks[chunk])
+				sharedChunks[chunk] = false; //the grid it is shared with still has it
+			else if (file != null)
+				file.release(chunk);
+			chunks[chunk] = null;
+		}
 	}
 
 	//given a cell, return a point that is found in that cell
@@ -74,136 +461,535 @@ public class VoxelGrid {
 
 	//updates the light by setting light in top layer to environmental conditions and hen propagating it through canopy
 	void updateLight() {
-		for (int i = 0; i < size.x; i++) //initialize light going in and out of top layer to 1
+		if (lightUpdate == INCREMENTAL_LIGHT_UPDATE) {
+			updateChangedLight();
+		}
+		else if (lightUpdate == COLUMN_LIGHT_UPDATE) {
+			updateColumns();
+		}
+		else {
+			sweepLight();
+		}
+		changedCount = 0;
+		writeHeader();
+	}
+
+	//counts the cells that were filled or emptied since the last update along the paths of light through them
+	private void updateColumns() {
+		litTop = Math.max(litTop, maxZ);
+		Arrays.sort(changedCells, 0, changedCount);
+		int i = 0;
+		while (i < changedCount) {
+			int cell = changedCells[i];
+			int next = i + 1;
+			while (next < changedCount && changedCells[next] == cell) {
+				next++;
+			}
+			if ((next - i) % 2 == 1) { //filled and emptied again leaves the cell as it was
+				changeColumns(cell, isOccupied(cell) ? 1 : -1);
+			}
+			i = next;
+		}
+	}
+
+	//adds (change 1) or removes (change -1) an occupied cell from the counts along the paths of light through it
+	private void changeColumns(int cell, int change) {
+		int z = cell / area;
+		int y = (cell - z * area) / nx;
+		columns.change(cell - z * area - y * nx, y, z, change);
+	}
+
+	//recomputes the light in every cell from the top down
+	private void sweepLight() {
+		//initialize light going in and out of top layer
+		seededLayer = maxZ + 1;
+		litTop = Math.max(litTop, maxZ);
+		for (int k = 0; k < outCount; k++) {
+			Arrays.fill(planeAboveOut[k], DIRECTIONAL ? startLight[k] : 1.0f);
+		}
+		int first = chunkIndex(0, 0, seededLayer);
+		for (int i = first; i < first + chunksX * chunksY; i++) {
+			if (DIRECTIONAL) {
+				releaseChunk(i);
+			}
+			else {
+				FloatBuffer values = writableChunk(i);
+				for (int j = 0; j < values.capacity(); j++) {
+					values.put(j, 1.0f);
+				}
+			}
+		}
+		//propagate the light downward
+		for (int q = maxZ; q >= 0; q--)
 		{
-			for (int j = 0; j < size.y; j++)
-			{
-				if (DIRECTIONAL) {
-					for (int k = 0; k < 5; k++) {
-						voxels[i][j][maxZ + 1].directionalLightIn[k] = startLight[k];
-						voxels[i][j][maxZ + 1].directionalLightOut[k] = startLight[k];
+			if (DIRECTIONAL) {
+				findUnshaded(q);
+			}
+			if (lightPool != null) {
+				lightPool.invoke(new LayerTask(q, 0, chunksY));
+			}
+			else {
+				propagateChunkRows(q, 0, chunksY);
+			}
+			for (int k = 0; k < outCount; k++) {
+				wrapPlane(planeOut[k]);
+			}
+			float[][] below = planeOut;
+			planeOut = planeAboveOut;
+			planeAboveOut = below;
+		}
+	}
+
+	//marks the chunks of layer q that have no occupied cells and only unattenuated light coming in from above
+	private void findUnshaded(int q) {
+		for (int cy = 0; cy < chunksY; cy++) {
+			int north = cy == chunksY - 1 ? 0 : cy + 1;
+			int south = cy == 0 ? chunksY - 1 : cy - 1;
+			for (int cx = 0; cx < chunksX; cx++) {
+				int east = cx == chunksX - 1 ? 0 : cx + 1;
+				int west = cx == 0 ? chunksX - 1 : cx - 1;
+				int above = (q + 1) * chunksY;
+				chunkUnshaded[cy * chunksX + cx] = chunkOccupied[(q * chunksY + cy) * chunksX + cx] == 0
+						&& chunks[(above + cy) * chunksX + cx] == null
+						&& chunks[(above + north) * chunksX + cx] == null
+						&& chunks[(above + south) * chunksX + cx] == null
+						&& chunks[(above + cy) * chunksX + east] == null
+						&& chunks[(above + cy) * chunksX + west] == null;
+			}
+		}
+	}
+
+	//computes the light in chunk rows cyFrom (inclusive) to cyTo (exclusive) of layer q from the layer above,
+	//and keeps the chunks that are shaded. Neighbouring shaded chunks are computed together so rows are long
+	private void propagateChunkRows(int q, int cyFrom, int cyTo) {
+		for (int cy = cyFrom; cy < cyTo; cy++) {
+			int sFrom = cy << CHUNK_BITS;
+			int sTo = Math.min(ny, sFrom + CHUNK);
+			int cx = 0;
+			while (cx < chunksX) {
+				int rFrom = cx << CHUNK_BITS;
+				if (DIRECTIONAL && chunkUnshaded[cy * chunksX + cx]) {
+					int rTo = Math.min(nx, rFrom + CHUNK);
+					for (int s = sFrom; s < sTo; s++) {
+						int p = (s + 1) * rowStride + 1;
+						for (int k = 0; k < 5; k++) {
+							Arrays.fill(planeOut[k], p + rFrom, p + rTo, startLight[k]);
+						}
 					}
+					releaseChunk((q * chunksY + cy) * chunksX + cx);
+					cx++;
+					continue;
+				}
+				int cxTo = cx + 1;
+				while (cxTo < chunksX && !(DIRECTIONAL && chunkUnshaded[cy * chunksX + cxTo])) {
+					cxTo++;
+				}
+				int rTo = Math.min(nx, cxTo << CHUNK_BITS);
+				if (DIRECTIONAL) {
+					propagateDirectional(q, rFrom, rTo, sFrom, sTo);
 				}
 				else {
-					voxels[i][j][maxZ + 1].lightIn = 1.0f;
-					voxels[i][j][maxZ + 1].lightOut = 1.0f;
+					propagateNondirectional(q, rFrom, rTo, sFrom, sTo);
+				}
+				for (; cx < cxTo; cx++) {
+					storeChunk((q * chunksY + cy) * chunksX + cx, q, cx << CHUNK_BITS, Math.min(nx, (cx + 1) << CHUNK_BITS), sFrom, sTo);
 				}
 			}
 		}
-		//propagate the light downward
+	}
+
+	//propagates part of a layer, splitting it in half until the pieces are small enough
+	private class LayerTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		final int q, cyFrom, cyTo;
+
+		LayerTask(int q, int cyFrom, int cyTo) {
+			this.q = q;
+			this.cyFrom = cyFrom;
+			this.cyTo = cyTo;
+		}
+
+		@Override
+		protected void compute() {
+			if (cyTo - cyFrom < 2 || (cyTo - cyFrom) * CHUNK * nx <= MIN_CELLS_PER_TASK) {
+				propagateChunkRows(q, cyFrom, cyTo);
+			}
+			else {
+				int middle = (cyFrom + cyTo) >>> 1;
+				invokeAll(new LayerTask(q, cyFrom, middle), new LayerTask(q, middle, cyTo));
+			}
+		}
+	}
+
+	//copies a computed piece of the plane into its chunk, or drops the chunk if nothing in it is shaded
+	private void storeChunk(int chunk, int q, int rFrom, int rTo, int sFrom, int sTo) {
+		if (DIRECTIONAL && isOpen(q, rFrom, rTo, sFrom, sTo)) {
+			releaseChunk(chunk);
+			return;
+		}
+		FloatBuffer values = writableChunk(chunk);
+		for (int s = sFrom; s < sTo; s++) {
+			int p = (s + 1) * rowStride + rFrom + 1;
+			int o = chunkOffset(rFrom, s);
+			values.position(o);
+			values.put(planeIn, p, rTo - rFrom);
+			for (int k = 0; k < storedOut; k++) {
+				values.position((1 + k) * CHUNK_CELLS + o);
+				values.put(planeOut[k], p, rTo - rFrom);
+			}
+		}
+	}
+
+	//true if a computed piece of the plane holds only unattenuated light
+	private boolean isOpen(int q, int rFrom, int rTo, int sFrom, int sTo) {
+		float in = openIn(q);
+		for (int s = sFrom; s < sTo; s++) {
+			int p = (s + 1) * rowStride + 1;
+			for (int r = rFrom; r < rTo; r++) {
+				if (planeIn[p + r] != in)
+					return false;
+			}
+			for (int k = 0; k < outCount; k++) {
+				float[] out = planeOut[k];
+				float open = openOut(k);
+				for (int r = rFrom; r < rTo; r++) {
+					if (out[p + r] != open)
+						return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	//recomputes only the cells whose light can have changed since the last update: the cells that were filled or emptied,
+	//and below them every cell that takes light from a cell whose light changed. DOWN light stays in its column,
+	//the other directions move one cell sideways per layer. Everywhere else the light from the last update is kept
+	private void updateChangedLight() {
+		Arrays.sort(changedCells, 0, changedCount); //layers are the slowest index, so the highest layer is at the end
+		int next = changedCount - 1;
+		boolean anyQueued = false;
+		litTop = Math.max(litTop, maxZ);
+		//light is started from the top layer again, anything that changes there has to be passed down
+		int top = maxZ + 1;
+		for (int s = 0; s < ny; s++) {
+			for (int r = 0; r < nx; r++) {
+				anyQueued |= queueChanged(seedCell(r, s, top), r, s);
+			}
+		}
+		//layers between the old and new top of the light were never computed from the layer above them
+		int forcedFrom = seededLayer;
+		seededLayer = top;
 		for (int q = maxZ; q >= 0; q--)
 		{
-			for (int r = 0; r < size.x; r++)
+			boolean[] current = queued;
+			boolean[] currentRows = queuedRows;
+			queued = nextQueued;
+			queuedRows = nextQueuedRows;
+			nextQueued = current;
+			nextQueuedRows = currentRows;
+			while (next >= 0 && changedCells[next] >= q * area) { //cells in this layer that were filled or emptied
+				int column = changedCells[next--] - q * area;
+				current[column] = true;
+				currentRows[column / nx] = true;
+			}
+			anyQueued = updateChangedLayer(q, q >= forcedFrom, current, currentRows);
+			if (!anyQueued && next < 0 && q <= forcedFrom) {
+				break; //nothing left that can change
+			}
+		}
+		Arrays.fill(queued, false); //columns queued below the ground
+		Arrays.fill(queuedRows, false);
+	}
+
+	//recomputes the queued columns of layer q, or all of them if forced, returns true if anything was queued for the layer below
+	private boolean updateChangedLayer(int q, boolean forced, boolean[] current, boolean[] currentRows) {
+		boolean anyQueued = false;
+		for (int s = 0; s < ny; s++) {
+			if (!forced && !currentRows[s]) {
+				continue;
+			}
+			currentRows[s] = false;
+			int column = s * nx;
+			for (int r = 0; r < nx; r++, column++) {
+				if (forced || current[column]) {
+					current[column] = false;
+					anyQueued |= queueChanged(updateCell(r, s, q), r, s);
+				}
+			}
+		}
+		return anyQueued;
+	}
+
+	//queues the columns in the layer below that take light from a cell whose light changed
+	//changed holds one bit per direction (DNSEW) that changed, or 1 for nondirectional light
+	private boolean queueChanged(int changed, int r, int s) {
+		if (changed == 0) {
+			return false;
+		}
+		if (!DIRECTIONAL) {
+			changed = 0x1f;
+		}
+		if ((changed & (1 << DOWN)) != 0)
+			queue(r, s);
+		if ((changed & (1 << NORTH)) != 0)
+			queue(r, s == 0 ? ny - 1 : s - 1);
+		if ((changed & (1 << SOUTH)) != 0)
+			queue(r, s == ny - 1 ? 0 : s + 1);
+		if ((changed & (1 << EAST)) != 0)
+			queue(r == 0 ? nx - 1 : r - 1, s);
+		if ((changed & (1 << WEST)) != 0)
+			queue(r == nx - 1 ? 0 : r + 1, s);
+		return true;
+	}
+
+	//queues a column to be recomputed in the next layer down
+	private void queue(int r, int s) {
+		queued[s * nx + r] = true;
+		queuedRows[s] = true;
+	}
+
+	//sets a cell in the top layer to the environmental light, returns which of its outgoing light changed
+	private int seedCell(int r, int s, int q) {
+		if (DIRECTIONAL) {
+			System.arraycopy(startLight, 0, cellOut, 0, 5);
+			return storeCell(r, s, q, lightIn(r, s, q));
+		}
+		cellOut[0] = 1.0f;
+		return storeCell(r, s, q, 1.0f);
+	}
+
+	//recomputes a single cell from the layer above, returns which of its outgoing light changed
+	//must do the same arithmetic as propagateDirectional and propagateNondirectional
+	private int updateCell(int r, int s, int q) {
+		int a = q + 1; //layer above
+		int n = s == ny - 1 ? 0 : s + 1;
+		int b = s == 0 ? ny - 1 : s - 1;
+		int e = r == nx - 1 ? 0 : r + 1;
+		int w = r == 0 ? nx - 1 : r - 1;
+		boolean full = isOccupied(index(r, s, q));
+		if (DIRECTIONAL) {
+			float inD = lightOut(DOWN, r, s, a);
+			float inN = lightOut(NORTH, r, n, a);
+			float inS = lightOut(SOUTH, r, b, a);
+			float inE = lightOut(EAST, e, s, a);
+			float inW = lightOut(WEST, w, s, a);
+			float lightHere = inD + inN + inS + inE + inW;
+			if (full) {
+				inD = (float)(.2 * inD);
+				inN = (float)(.2 * inN);
+				inS = (float)(.2 * inS);
+				inE = (float)(.2 * inE);
+				inW = (float)(.2 * inW);
+			}
+			cellOut[DOWN] = inD;
+			cellOut[NORTH] = inN;
+			cellOut[SOUTH] = inS;
+			cellOut[EAST] = inE;
+			cellOut[WEST] = inW;
+			return storeCell(r, s, q, lightHere);
+		}
+		float lightHere = (lightOut(0, r, s, a) * (1-(4*lightFactor))) + (lightFactor * lightOut(0, e, s, a)) + (lightFactor * lightOut(0, w, s, a))
+				+ (lightFactor * lightOut(0, r, n, a)) +(lightFactor * lightOut(0, r, b, a));
+		cellOut[0] = full ? (float)(.2 * lightHere) : lightHere;
+		return storeCell(r, s, q, lightHere);
+	}
+
+	//light coming into cell (r, s) of layer q
+	private float lightIn(int r, int s, int q) {
+		FloatBuffer chunk = chunks[chunkIndex(r, s, q)];
+		if (chunk == null)
+			return openIn(q);
+		return chunk.get(chunkOffset(r, s));
+	}
+
+	//light leaving cell (r, s) of layer q, in direction k or in total
+	private float lightOut(int k, int r, int s, int q) {
+		FloatBuffer chunk = chunks[chunkIndex(r, s, q)];
+		if (chunk == null)
+			return openOut(k);
+		return chunk.get((1 + k) * CHUNK_CELLS + chunkOffset(r, s));
+	}
+
+	//stores the light coming into cell (r, s) of layer q and the light in cellOut leaving it, creating its chunk
+	//if the light is no longer unattenuated. Returns which of its outgoing light changed
+	private int storeCell(int r, int s, int q, float in) {
+		int index = chunkIndex(r, s, q);
+		FloatBuffer chunk = chunks[index];
+		if (chunk == null) {
+			boolean open = in == openIn(q);
+			for (int k = 0; k < outCount; k++) {
+				open &= cellOut[k] == openOut(k);
+			}
+			if (open) {
+				return 0;
+			}
+			chunk = createOpenChunk(index, q);
+		}
+		else {
+			chunk = writableChunk(index);
+		}
+		int o = chunkOffset(r, s);
+		chunk.put(o, in);
+		int changed = 0;
+		for (int k = 0; k < outCount; k++) {
+			o += CHUNK_CELLS;
+			if (chunk.get(o) != cellOut[k]) {
+				chunk.put(o, cellOut[k]);
+				changed |= 1 << k;
+			}
+		}
+		return changed;
+	}
+
+	//directional light: light in each direction comes from the neighbouring cell above in that direction
+	private void propagateDirectional(int q, int rFrom, int rTo, int sFrom, int sTo) {
+		float[] down = planeOut[DOWN];
+		float[] north = planeOut[NORTH];
+		float[] south = planeOut[SOUTH];
+		float[] east = planeOut[EAST];
+		float[] west = planeOut[WEST];
+		float[] downAbove = planeAboveOut[DOWN];
+		float[] northAbove = planeAboveOut[NORTH];
+		float[] southAbove = planeAboveOut[SOUTH];
+		float[] eastAbove = planeAboveOut[EAST];
+		float[] westAbove = planeAboveOut[WEST];
+		for (int s = sFrom; s < sTo; s++)
+		{
+			int p = (s + 1) * rowStride + rFrom + 1;
+			int c = index(rFrom, s, q);
+			if (vectorKernel != null) {
+				vectorKernel.propagateRow(planeAboveOut, planeOut, planeIn, rowStride, occupied, p, c, rTo - rFrom);
+				continue;
+			}
+			for (int r = rFrom; r < rTo; r++, p++, c++)
 			{
-				for (int s = 0; s < size.y; s++)
-				{
-					Voxel v = voxels[r][s][q];	
-					float lightHere;
-					float lightOutOfHere;
-					//light straight down, light in cell is function of the light in 5 cells above
-					if (!DIRECTIONAL) {
-						float LA = voxels[r][s][q+1].lightOut; //light directly above
-						float LAR = voxels[(r+1) % ((int)(size.x))][s][q+1].lightOut; //light above and to the right
-						float LAL = voxels[(r-1+((int)(size.x))) % ((int)(size.x))][s][q+1].lightOut; //light above and to the left
-						float LAB = voxels[r][(s+1) % ((int)(size.y))][q+1].lightOut; //light above and behind
-						float LAF = voxels[r][(s-1+((int)(size.y))) % ((int)(size.y))][q+1].lightOut; //light above and in front of
-						lightHere = (LA * (1-(4*lightFactor))) + (lightFactor * LAR) + (lightFactor * LAL) + (lightFactor * LAB) +(lightFactor * LAF);
-					}        
-					//directional light
-					else {
-						v.directionalLightIn[DOWN] = voxels[r][s][q+1].directionalLightOut[DOWN];
-						v.directionalLightIn[NORTH] = voxels[r][(s+1) % ((int)(size.y))][q+1].directionalLightOut[NORTH];
-						v.directionalLightIn[SOUTH] = voxels[r][(s-1+((int)(size.y))) % ((int)(size.y))][q+1].directionalLightOut[SOUTH];
-						v.directionalLightIn[EAST] = voxels[(r+1) % ((int)(size.x))][s][q+1].directionalLightOut[EAST];
-						v.directionalLightIn[WEST] = voxels[(r-1+((int)(size.x))) % ((int)(size.x))][s][q+1].directionalLightOut[WEST];
-					}
+				float inD = downAbove[p];
+				float inN = northAbove[p + rowStride];
+				float inS = southAbove[p - rowStride];
+				float inE = eastAbove[p + 1];
+				float inW = westAbove[p - 1];
+				if (isOccupied(c)) {
+					down[p] = (float)(.2 * inD);
+					north[p] = (float)(.2 * inN);
+					south[p] = (float)(.2 * inS);
+					east[p] = (float)(.2 * inE);
+					west[p] = (float)(.2 * inW);
+				}
+				else {
+					down[p] = inD;
+					north[p] = inN;
+					south[p] = inS;
+					east[p] = inE;
+					west[p] = inW;
+				}
+				planeIn[p] = inD + inN + inS + inE + inW;
+			}
+		}
+	}
 
-					if (v.occupied)
-					{
-						if (DIRECTIONAL) {
-							for (int w = 0; w < 5; w++) {
-								v.directionalLightOut[w] = (float)(.2 * v.directionalLightIn[w]);
-							}
-						}
-						else {
-							lightOutOfHere = (float)(.2 * lightHere); //if the cell here is full, only let some of the light through the canopy (other half
-							//will be absorbed and/or used in photosynthesis)
-						}
-					}
-					else
-					{
-						if (DIRECTIONAL) {
-							for (int w = 0; w < 5; w++) {
-								v.directionalLightOut[w] = v.directionalLightIn[w];
-							}
-						}
-						else {
-							lightOutOfHere = lightHere;    //if the cell is not taken, then nothing is absorbing light so all light will exit cell       
-						}
-					}
-					if (!DIRECTIONAL) {
-						voxels[r][s][q].lightIn = lightHere;
-						voxels[r][s][q].lightOut = lightOutOfHere;
-					}
-					else {
-						float lightI = 0;
-						for (int h = 0; h < 5; h++) {
-							lightI += v.directionalLightIn[h];
-						}
-						v.lightIn = lightI;
-						float lightO = 0;
-						for (int h = 0; h < 5; h++) {
-							lightO += v.directionalLightOut[h];
-						}
-						v.lightOut = lightO;
-					}
+	//light straight down, light in cell is function of the light in 5 cells above
+	private void propagateNondirectional(int q, int rFrom, int rTo, int sFrom, int sTo) {
+		float[] lightOut = planeOut[0];
+		float[] lightAbove = planeAboveOut[0];
+		for (int s = sFrom; s < sTo; s++)
+		{
+			int p = (s + 1) * rowStride + rFrom + 1;
+			int c = index(rFrom, s, q);
+			for (int r = rFrom; r < rTo; r++, p++, c++)
+			{
+				float LA = lightAbove[p]; //light directly above
+				float LAR = lightAbove[p + 1]; //light above and to the right
+				float LAL = lightAbove[p - 1]; //light above and to the left
+				float LAB = lightAbove[p + rowStride]; //light above and behind
+				float LAF = lightAbove[p - rowStride]; //light above and in front of
+				float lightHere = (LA * (1-(4*lightFactor))) + (lightFactor * LAR) + (lightFactor * LAL) + (lightFactor * LAB) +(lightFactor * LAF);
+				planeIn[p] = lightHere;
+				if (isOccupied(c)) {
+					lightOut[p] = (float)(.2 * lightHere); //if the cell here is full, only let some of the light through the canopy (other half
+					//will be absorbed and/or used in photosynthesis)
+				}
+				else {
+					lightOut[p] = lightHere; //if the cell is not taken, then nothing is absorbing light so all light will exit cell
 				}
 			}
 		}
 	}
 
+	//copies the edges of a plane into the halo on the opposite side so the plot wraps around
+	private void wrapPlane(float[] values) {
+		for (int s = 0; s < ny; s++) {
+			int p = (s + 1) * rowStride + 1;
+			values[p - 1] = values[p + nx - 1];
+			values[p + nx] = values[p];
+		}
+		System.arraycopy(values, ny * rowStride + 1, values, 1, nx);
+		System.arraycopy(values, rowStride + 1, values, (ny + 1) * rowStride + 1, nx);
+	}
+
 //get the amount of light in a given cell
 double getLight (Vector3 point) {
-  Vector3 cell = findCell(point);
-  return voxels[(int)cell.x][(int)cell.y][(int)cell.z].lightIn;
+  return getLight(cellIndex(point));
+}
+
+//get the amount of light in the cell with the given index
+double getLight (int cell) {
+  if (columns != null) {
+    int z = cell / area;
+    if (z > litTop)
+      return 0;
+    int y = (cell - z * area) / nx;
+    return columns.light(cell - z * area - y * nx, y, z);
+  }
+  FloatBuffer chunk = chunks[chunkOfCell(cell)];
+  if (chunk == null)
+    return openIn(cell / area);
+  return chunk.get(chunkOffset(cell % nx, cell / nx % ny));
 }
 
 //check if the cell at given point is full
 boolean cellFull( Vector3 point ) {
-  Vector3 cell = findCell(point);
-  if (cell.z >= size.z || cell.z <= 0)
+  return cellFull(cellIndex(point));
+}
+
+//check if the cell with the given index is full, everything above and below the grid counts as full
+boolean cellFull( int cell ) {
+  if (cell == NO_CELL)
     return true;
-  return voxels[(int)cell.x][(int)cell.y][(int)cell.z].occupied;
+  return isOccupied(cell);
 }
 
 //set the cell in voxel grid to be full/empty
 void setCellFull(Vector3 point, boolean full ) {
-  Vector3 cell = findCell(point);
-  voxels[(int)cell.x][(int)cell.y][(int)cell.z].occupied = full;
-    maxZ = Math.max(maxZ, (int)cell.z);
+  setCellFull(cellIndex(point), full);
 }
 
-//draw the shadow of the tree on the ground based on the amount of light left at the ground
-void drawShadow(GL2 gl, GLU glu) {
-	gl.glDisable(GL2.GL_LIGHTING);
-	for (int i = 0; i < size.x; i++)
-	{
-		for (int j = 0; j < size.y; j++)
-		{
-			gl.glPushMatrix();
-			float lightHere = voxels[i][j][0].lightIn;
-	        gl.glColor3f(lightHere, lightHere, lightHere);
-	        Vector3 corner = cellToPoint(new Vector3(i, j, 0));
-	        gl.glTranslatef(corner.x, corner.y, corner.z);
-	        gl.glBegin(GL2.GL_QUADS);
-	        gl.glVertex3f(0f, 0f, 0f);
-	        gl.glVertex3f(0f, CELL_SIZE, 0f);
-	        gl.glVertex3f(CELL_SIZE, CELL_SIZE, 0f);
-	        gl.glVertex3f(CELL_SIZE, 0f, 0f);
-	        gl.glEnd();
-			gl.glPopMatrix();
-		}
-	}
+//set the cell with the given index to be full/empty
+void setCellFull(int cell, boolean full ) {
+  if (isOccupied(cell) != full) {
+    occupied.put(cell >>> 6, occupied.get(cell >>> 6) ^ (1L << cell));
+    if (changedCount == changedCells.length)
+      changedCells = Arrays.copyOf(changedCells, changedCount * 2);
+    changedCells[changedCount++] = cell;
+    chunkOccupied[chunkOfCell(cell)] += full ? 1 : -1;
+  }
+    maxZ = Math.max(maxZ, cell / area);
 }
 
-}
\ No newline at end of file
+//set the cells with the given indices in cells[from, to) to be empty, for a whole branch at once
+void setCellsEmpty(int[] cells, int from, int to) {
+  if (changedCount + to - from > changedCells.length)
+    changedCells = Arrays.copyOf(changedCells, Math.max(changedCount * 2, changedCount + to - from));
+  int highest = maxZ;
+  for (int i = from; i < to; i++) {
+    int cell = cells[i];
+    if (isOccupied(cell)) {
+      occupied.put(cell >>> 6, occupied.get(cell >>> 6) ^ (1L << cell));
+      changedCells[changedCount++] = cell;
+      chunkOccupied[chunkOfCell(cell)]--;
+    }
+    highest = Math.max(highest, cell / area);
+  }
+  maxZ = highest;
+}
+
+}
@@ -0,0 +1,46 @@
+//running mean and variance of a stream of values, updated one value at a time with Welford's method so that it is
+//numerically stable and needs no memory for the values
+public class Welford {
+	long count;
+	double mean;
+	private double squares; //sum of squared differences from the mean
+
+	void add(double value) {
+		count++;
+		double delta = value - mean;
+		mean += delta / count;
+		squares += delta * (value - mean);
+	}
+
+	//sample variance, 0 for fewer than two values
+	double variance() {
+		return count > 1 ? squares / (count - 1) : 0;
+	}
+
+	double standardDeviation() {
+		return Math.sqrt(variance());
+	}
+
+	//standard error of the mean
+	double standardError() {
+		return count > 0 ? Math.sqrt(variance() / count) : 0;
+	}
+
+	//half the width of the 95% confidence interval of the mean, infinite for fewer than two values
+	double halfWidth95() {
+		if (count < 2)
+			return Double.POSITIVE_INFINITY;
+		return t95(count - 1) * standardError();
+	}
+
+	//two sided 95% critical value of Student's t distribution with the given degrees of freedom
+	static double t95(long degrees) {
+		if (degrees <= T95.length)
+			return T95[(int)degrees - 1];
+		return 1.96 + 2.4 / degrees; //within 0.01 of the exact value beyond the table
+	}
+
+	private static final double[] T95 = {12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262, 2.228,
+			2.201, 2.179, 2.160, 2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086,
+			2.080, 2.074, 2.069, 2.064, 2.060, 2.056, 2.052, 2.048, 2.045, 2.042};
+}
@@ -0,0 +1,59 @@
+import java.util.ArrayList;
+
+//keeps the running mean and variance of every statistic for each year in memory, over all the trees and over all
+//the stands it is given. Sharing one sink between the replicates of a configuration gives the spread between them
+public class WelfordStatsSink implements StatsSink {
+	private final ArrayList<Welford[]> trees = new ArrayList<Welford[]>(); //by year, then by column of TreeStats
+	private final ArrayList<Welford[]> stand = new ArrayList<Welford[]>(); //by year, then by column of StandStats
+	private final float[] treeRow = new float[TreeStats.COLUMNS.length];
+	private final float[] standRow = new float[StandStats.COLUMNS.length];
+
+	public synchronized void tree(TreeStats stats) {
+		add(trees, stats, treeRow);
+	}
+
+	public synchronized void stand(StandStats stats) {
+		add(stand, stats, standRow);
+	}
+
+	private static void add(ArrayList<Welford[]> years, YearStats stats, float[] row) {
+		while (years.size() <= stats.year) {
+			years.add(null);
+		}
+		Welford[] columns = years.get(stats.year);
+		if (columns == null) {
+			columns = new Welford[row.length];
+			for (int c = 0; c < columns.length; c++) {
+				columns[c] = new Welford();
+			}
+			years.set(stats.year, columns);
+		}
+		stats.values(row);
+		for (int c = 0; c < row.length; c++) {
+			columns[c].add(row[c]);
+		}
+	}
+
+	//the running statistics of a column of TreeStats in a year, null if no tree reached that year
+	synchronized Welford tree(int year, String column) {
+		return find(trees, year, TreeStats.COLUMNS, column);
+	}
+
+	//the running statistics of a column of StandStats in a year, null if no stand reached that year
+	synchronized Welford stand(int year, String column) {
+		return find(stand, year, StandStats.COLUMNS, column);
+	}
+
+	private static Welford find(ArrayList<Welford[]> years, int year, String[] names, String column) {
+		if (year >= years.size() || years.get(year) == null)
+			return null;
+		for (int c = 0; c < names.length; c++) {
+			if (names[c].equals(column))
+				return years.get(year)[c];
+		}
+		throw new IllegalArgumentException("no column " + column);
+	}
+
+	public void close() {
+	}
+}
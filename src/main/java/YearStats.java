@@ -0,0 +1,14 @@
+//statistics of a tree or a whole stand at the end of a year, handed to the StatsSinks of a simulation
+public abstract class YearStats {
+	long seed; //of the simulation the statistics are from, tells runs apart when sinks are shared
+	int year;
+
+	//names of the values, in the order of values and of the columns of appendCsv after the seed
+	abstract String[] columns();
+
+	//the values as floats, for sinks that keep numbers rather than text
+	abstract void values(float[] into);
+
+	//the values as one line of comma separated text, without the seed
+	abstract void appendCsv(StringBuilder line);
+}
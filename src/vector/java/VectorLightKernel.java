@@ -0,0 +1,70 @@
+import java.nio.LongBuffer;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorSpecies;
+
+//directional light kernel that moves a whole vector of cells at once with the jdk.incubator.vector module
+//compile it against the classes in src/main/java with --add-modules jdk.incubator.vector and run with the same flag,
+//VoxelGrid uses its scalar loop when this class or the module is missing
+public class VectorLightKernel implements DirectionalKernel {
+	static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+
+	public void propagateRow(float[][] above, float[][] out, float[] in, int rowStride, LongBuffer occupied, int p, int c, int n) {
+		float[] downAbove = above[0];
+		float[] northAbove = above[1];
+		float[] southAbove = above[2];
+		float[] eastAbove = above[3];
+		float[] westAbove = above[4];
+		float[] down = out[0];
+		float[] north = out[1];
+		float[] south = out[2];
+		float[] east = out[3];
+		float[] west = out[4];
+		//first pass light through every cell as if it was empty
+		int end = p + n;
+		int i = p;
+		for (int vectorEnd = p + FLOATS.loopBound(n); i < vectorEnd; i += FLOATS.length()) {
+			FloatVector inD = FloatVector.fromArray(FLOATS, downAbove, i);
+			FloatVector inN = FloatVector.fromArray(FLOATS, northAbove, i + rowStride);
+			FloatVector inS = FloatVector.fromArray(FLOATS, southAbove, i - rowStride);
+			FloatVector inE = FloatVector.fromArray(FLOATS, eastAbove, i + 1);
+			FloatVector inW = FloatVector.fromArray(FLOATS, westAbove, i - 1);
+			inD.intoArray(down, i);
+			inN.intoArray(north, i);
+			inS.intoArray(south, i);
+			inE.intoArray(east, i);
+			inW.intoArray(west, i);
+			inD.add(inN).add(inS).add(inE).add(inW).intoArray(in, i);
+		}
+		for (; i < end; i++) {
+			float inD = downAbove[i];
+			float inN = northAbove[i + rowStride];
+			float inS = southAbove[i - rowStride];
+			float inE = eastAbove[i + 1];
+			float inW = westAbove[i - 1];
+			down[i] = inD;
+			north[i] = inN;
+			south[i] = inS;
+			east[i] = inE;
+			west[i] = inW;
+			in[i] = inD + inN + inS + inE + inW;
+		}
+		//then attenuate the light leaving the occupied cells, in double precision like the scalar loop so results match exactly
+		for (int word = c >>> 6, last = (c + n - 1) >>> 6; word <= last; word++) {
+			long bits = occupied.get(word);
+			if (word == c >>> 6)
+				bits &= -1L << c;
+			if (word == last)
+				bits &= -1L >>> (63 - ((c + n - 1) & 63));
+			while (bits != 0) {
+				int j = p + (word << 6) + Long.numberOfTrailingZeros(bits) - c;
+				down[j] = (float)(.2 * down[j]);
+				north[j] = (float)(.2 * north[j]);
+				south[j] = (float)(.2 * south[j]);
+				east[j] = (float)(.2 * east[j]);
+				west[j] = (float)(.2 * west[j]);
+				bits &= bits - 1;
+			}
+		}
+	}
+}